@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jdom2.Element;
+import org.ml.tools.PropertyManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creating named property sets from XML, with each set inheriting from the
+ * previous one
+ *
+ * @author Dr. Matthias Laux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CreatePropertyManagersBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int chainLength;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private Element element;
+    private PropertyManager propertyManager;
+
+    /**
+     *
+     */
+    @Setup
+    public void setup() {
+        Element propertySetsElement = new Element(PropertyManager.XML.propertySets.toString());
+        propertySetsElement.addContent(createPropertySet(null, null, "general"));
+        for (int i = 0; i < chainLength; i++) {
+            propertySetsElement.addContent(createPropertySet("set" + i, i == 0 ? null : "set" + (i - 1), "set" + i));
+        }
+        element = new Element("configuration");
+        element.addContent(propertySetsElement);
+        propertyManager = PropertyManager.createPropertyManagers(element).get("set" + (chainLength - 1));
+    }
+
+    /**
+     * Every set overrides a tenth of the properties and refers to the general
+     * ones in some of its values
+     *
+     * @param name
+     * @param parent
+     * @param valuePrefix
+     * @return
+     */
+    private Element createPropertySet(String name, String parent, String valuePrefix) {
+        Element propertySetElement = new Element(PropertyManager.XML.propertySet.toString());
+        if (name != null) {
+            propertySetElement.setAttribute(PropertyManager.XML.name.toString(), name);
+        }
+        if (parent != null) {
+            propertySetElement.setAttribute(PropertyManager.XML.parent.toString(), parent);
+        }
+        Element propertiesElement = new Element(PropertyManager.XML.properties.toString());
+        for (int i = 0; i < size; i++) {
+            if (name != null && i % 10 != 0) {
+                continue;
+            }
+            Element propertyElement = new Element(PropertyManager.XML.property.toString());
+            propertyElement.setAttribute(PropertyManager.XML.name.toString(), "key." + i);
+            propertyElement.setText(i % 20 == 0 ? "##key." + (i + 1) + "##/" + valuePrefix : valuePrefix + i);
+            propertiesElement.addContent(propertyElement);
+        }
+        propertySetElement.addContent(propertiesElement);
+        return propertySetElement;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public Map<String, PropertyManager> createPropertyManagers() {
+        return PropertyManager.createPropertyManagers(element);
+    }
+
+    /**
+     * A lookup in the last set of the chain
+     *
+     * @return
+     */
+    @Benchmark
+    public String getInheritedProperty() {
+        return propertyManager.getProperty("key." + (size - 1));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.ml.tools.Namespace;
+import org.ml.tools.PropertyManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reading properties from instances with a growing number of namespaces. The
+ * lookups use namespaces which are equal to, but not the same objects as, the
+ * namespaces used to store the properties, as is typical for callers
+ *
+ * @author Dr. Matthias Laux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GetPropertyBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int namespaceCount;
+
+    @Param({"100"})
+    public int size;
+
+    @Param({"ALL_NAMESPACES", "LAZY_ALL_NAMESPACES"})
+    public PropertyManager.ResolutionPolicy resolutionPolicy;
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private PropertyManager propertyManager;
+    private Namespace[] namespaces;
+    private String[] keys;
+    private int index = 0;
+
+    /**
+     *
+     */
+    @Setup
+    public void setup() {
+        PropertyManager newManager = new PropertyManager();
+        newManager.setResolutionPolicy(resolutionPolicy);
+        newManager.beginBulk();
+        for (int n = 0; n < namespaceCount; n++) {
+            Namespace namespace = new Namespace("app", "module" + n);
+            for (int i = 0; i < size; i++) {
+                newManager.setProperty(namespace, "key." + i, i % 10 == 0 ? "##key." + (i + 1) + "##0" : String.valueOf(i));
+            }
+        }
+        newManager.commitBulk();
+        propertyManager = frozen ? newManager.freeze() : newManager;
+
+        namespaces = new Namespace[namespaceCount];
+        for (int n = 0; n < namespaceCount; n++) {
+            namespaces[n] = new Namespace("app", "module" + n);
+        }
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key." + i;
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public String getProperty() {
+        int i = index++;
+        return propertyManager.getProperty(namespaces[i % namespaceCount], keys[i % size]);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public String getMissingProperty() {
+        int i = index++;
+        return propertyManager.getProperty(namespaces[i % namespaceCount], "missing");
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public int getInt() {
+        int i = index++;
+        return propertyManager.getInt(namespaces[i % namespaceCount], keys[i % size], -1);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.ml.tools.PropertyManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Resolving chains of macros: "chain.n" refers to "chain.n-1" and so on down
+ * to "chain.0". Modifying the head of the chain re-resolves the whole chain
+ * (eagerly or, with lazy resolution, on the next read of its tail)
+ *
+ * @author Dr. Matthias Laux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MacroChainBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int depth;
+
+    @Param({"ALL_NAMESPACES", "WITHIN_NAMESPACE", "LAZY_ALL_NAMESPACES"})
+    public PropertyManager.ResolutionPolicy resolutionPolicy;
+
+    private PropertyManager propertyManager;
+    private String tail;
+    private int index = 0;
+
+    /**
+     *
+     */
+    @Setup
+    public void setup() {
+        propertyManager = new PropertyManager();
+        propertyManager.setResolutionPolicy(resolutionPolicy);
+        propertyManager.beginBulk();
+        propertyManager.setProperty("chain.0", "head");
+        for (int i = 1; i <= depth; i++) {
+            propertyManager.setProperty("chain." + i, "##chain." + (i - 1) + "##/" + i);
+        }
+        propertyManager.commitBulk();
+        tail = "chain." + depth;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public String updateHeadAndReadTail() {
+        propertyManager.setProperty("chain.0", (index++ & 1) == 0 ? "head" : "other");
+        return propertyManager.getProperty(tail);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public String readTail() {
+        return propertyManager.getProperty(tail);
+    }
+}
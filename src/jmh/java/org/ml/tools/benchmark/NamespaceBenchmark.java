@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.ml.tools.Namespace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Creating and comparing namespaces
+ *
+ * @author Dr. Matthias Laux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NamespaceBenchmark {
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private String[] keys;
+    private Namespace namespace;
+    private Namespace equalNamespace;
+    private Namespace otherNamespace;
+    private Namespace canonicalNamespace;
+    private Namespace otherCanonicalNamespace;
+
+    /**
+     *
+     */
+    @Setup
+    public void setup() {
+        keys = new String[depth];
+        for (int i = 0; i < depth; i++) {
+            keys[i] = "level" + i;
+        }
+        namespace = new Namespace(keys);
+        equalNamespace = new Namespace(keys.clone());
+        canonicalNamespace = Namespace.of(keys);
+        String[] otherKeys = keys.clone();
+        otherKeys[depth - 1] = "other";
+        otherNamespace = new Namespace(otherKeys);
+        otherCanonicalNamespace = Namespace.of(otherKeys);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public Namespace of() {
+        return Namespace.of(keys);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public Namespace create() {
+        return new Namespace(keys);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public Namespace derive() {
+        return namespace.derive("extension");
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public boolean equalsEqual() {
+        return namespace.equals(equalNamespace);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public boolean equalsOther() {
+        return namespace.equals(otherNamespace);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public boolean equalsCanonical() {
+        return canonicalNamespace.equals(otherCanonicalNamespace);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Benchmark
+    public int compareTo() {
+        return namespace.compareTo(otherNamespace);
+    }
+}
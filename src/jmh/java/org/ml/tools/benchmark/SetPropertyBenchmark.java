@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.ml.tools.PropertyManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Setting properties in an instance which already holds a given number of
+ * properties, with plain values and with values referring to other properties
+ *
+ * @author Dr. Matthias Laux
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SetPropertyBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean macros;
+
+    @Param({"ALL_NAMESPACES", "LAZY_ALL_NAMESPACES"})
+    public PropertyManager.ResolutionPolicy resolutionPolicy;
+
+    private PropertyManager propertyManager;
+    private String[] keys;
+    private String[] values;
+    private int index = 0;
+
+    /**
+     *
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        keys = new String[size];
+        values = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key." + i;
+            values[i] = macros && i > 0 ? "##key." + (i / 2) + "##/value" + i : "value" + i;
+        }
+        propertyManager = new PropertyManager();
+        propertyManager.setResolutionPolicy(resolutionPolicy);
+        propertyManager.beginBulk();
+        for (int i = 0; i < size; i++) {
+            propertyManager.setProperty(keys[i], values[i]);
+        }
+        propertyManager.commitBulk();
+    }
+
+    /**
+     * Overwrite an existing property
+     */
+    @Benchmark
+    public void setProperty() {
+        int i = index++ % size;
+        propertyManager.setProperty(keys[i], values[i]);
+    }
+
+    /**
+     * Load all properties into a new instance in one bulk load
+     *
+     * @return
+     */
+    @Benchmark
+    public PropertyManager bulkLoad() {
+        PropertyManager newManager = new PropertyManager();
+        newManager.setResolutionPolicy(resolutionPolicy);
+        newManager.beginBulk();
+        for (int i = 0; i < size; i++) {
+            newManager.setProperty(keys[i], values[i]);
+        }
+        newManager.commitBulk();
+        return newManager;
+    }
+}
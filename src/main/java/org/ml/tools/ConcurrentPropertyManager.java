@@ -0,0 +1,551 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jdom2.Element;
+
+/**
+ * A PropertyManager which can safely be shared between threads. Reads are
+ * lock-free: they are served from an immutable snapshot which is published
+ * through a volatile reference. Writers are serialized, work on a private copy
+ * of the current snapshot and publish the modified copy atomically once they
+ * are done. A bulk load ({@link #beginBulk()} / {@link #commitBulk()}) is
+ * published as a whole, so readers never see a partially applied update.
+ * <p>
+ * Writes are comparatively expensive as every published update copies the
+ * property data, so multiple updates should be grouped in a bulk load.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class ConcurrentPropertyManager extends PropertyManager {
+
+    static final long serialVersionUID = 1311976045L;
+    private volatile PropertyManager snapshot = new PropertyManager();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private transient PropertyManager working = null;
+    private transient int bulkDepth = 0;
+
+    /**
+     *
+     */
+    public ConcurrentPropertyManager() {
+    }
+
+    /**
+     * Create an instance and try to add all the properties to the default
+     * namespace, see {@link PropertyManager#PropertyManager(Element)}
+     *
+     * @param element
+     */
+    public ConcurrentPropertyManager(Element element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element may not be null");
+        }
+        setProperties(element);
+    }
+
+    /**
+     * Create an instance which inherits properties from the provided instances
+     * (in the order in which they are provided)
+     *
+     * @param propertyManagers
+     */
+    public ConcurrentPropertyManager(PropertyManager... propertyManagers) {
+        if (propertyManagers == null) {
+            throw new IllegalArgumentException("propertyManagers may not be null");
+        }
+        beginBulk();
+        try {
+            for (PropertyManager propertyManager : propertyManagers) {
+                setProperties(propertyManager);
+            }
+        } finally {
+            commitBulk();
+        }
+    }
+
+    /**
+     * Apply a single update to a copy of the current snapshot (or to the
+     * working copy of an ongoing bulk load) and publish it
+     *
+     * @param update
+     */
+    private void update(Update update) {
+        PropertyChangeEvent event = null;
+        writeLock.lock();
+        try {
+            if (working != null) {
+                update.apply(working);
+            } else {
+                PropertyManager copy = snapshot.copy();
+                copy.setStatistics(getStatistics());
+                if (hasPropertyChangeListeners()) {
+                    copy.startCollectingChanges(new PropertyChangeEvent(this));
+                }
+                update.apply(copy);
+                event = copy.stopCollectingChanges();
+                snapshot = copy;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        //.... The listeners are notified outside of the lock, so they may read (and write) this instance
+        if (event != null) {
+            firePropertyChange(event);
+        }
+    }
+
+    /**
+     *
+     * @return The working copy if the calling thread is doing a bulk load,
+     * the last published snapshot otherwise
+     */
+    private PropertyManager current() {
+        PropertyManager propertyManager = working;
+        return propertyManager != null && writeLock.isHeldByCurrentThread() ? propertyManager : snapshot;
+    }
+
+    /**
+     *
+     */
+    private interface Update {
+
+        void apply(PropertyManager propertyManager);
+    }
+
+    /**
+     * Start a bulk load. The calling thread holds the write lock until the
+     * matching {@link #commitBulk()}, so other writers are blocked in the
+     * meantime while readers continue to see the last published snapshot
+     */
+    @Override
+    public void beginBulk() {
+        writeLock.lock();
+        if (bulkDepth++ == 0) {
+            working = snapshot.copy();
+            working.setStatistics(getStatistics());
+            if (hasPropertyChangeListeners()) {
+                working.startCollectingChanges(new PropertyChangeEvent(this));
+            }
+        }
+        working.beginBulk();
+    }
+
+    /**
+     * Finish a bulk load. The outermost commit resolves the macros and
+     * publishes the result
+     */
+    @Override
+    public void commitBulk() {
+        if (!writeLock.isHeldByCurrentThread() || bulkDepth == 0) {
+            throw new IllegalStateException("commitBulk() called without matching beginBulk()");
+        }
+        PropertyChangeEvent event = null;
+        try {
+            PropertyManager propertyManager = working;
+            if (--bulkDepth == 0) {
+                working = null;
+                propertyManager.commitBulk();
+                event = propertyManager.stopCollectingChanges();
+                snapshot = propertyManager;
+            } else {
+                propertyManager.commitBulk();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (event != null) {
+            firePropertyChange(event);
+        }
+    }
+
+    /**
+     *
+     * @param resolutionPolicy
+     */
+    @Override
+    public void setResolutionPolicy(ResolutionPolicy resolutionPolicy) {
+        if (resolutionPolicy == null) {
+            throw new IllegalArgumentException("resolutionPolicy may not be null");
+        }
+        update(propertyManager -> propertyManager.setResolutionPolicy(resolutionPolicy));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public ResolutionPolicy getResolutionPolicy() {
+        return snapshot.getResolutionPolicy();
+    }
+
+    /**
+     *
+     * @param lookupPolicy
+     */
+    @Override
+    public void setLookupPolicy(LookupPolicy lookupPolicy) {
+        if (lookupPolicy == null) {
+            throw new IllegalArgumentException("lookupPolicy may not be null");
+        }
+        update(propertyManager -> propertyManager.setLookupPolicy(lookupPolicy));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public LookupPolicy getLookupPolicy() {
+        return snapshot.getLookupPolicy();
+    }
+
+    /**
+     *
+     * @param patternString
+     */
+    @Override
+    public void setMacroPattern(String patternString) {
+        if (patternString == null) {
+            throw new IllegalArgumentException("patternString may not be null");
+        }
+        update(propertyManager -> propertyManager.setMacroPattern(patternString));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String getMacroPattern() {
+        return snapshot.getMacroPattern();
+    }
+
+    /**
+     *
+     * @param avoidOverwrites
+     */
+    @Override
+    public void setAvoidOverwrites(boolean avoidOverwrites) {
+        update(propertyManager -> propertyManager.setAvoidOverwrites(avoidOverwrites));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public boolean doesAvoidOverwrites() {
+        return snapshot.doesAvoidOverwrites();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param value
+     */
+    @Override
+    public void setProperty(Namespace namespace, String key, String value) {
+        update(propertyManager -> propertyManager.setProperty(namespace, key, value));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    @Override
+    public void removeProperty(Namespace namespace, String key) {
+        update(propertyManager -> propertyManager.removeProperty(namespace, key));
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public Collection<Namespace> getNamespaces() {
+        return Collections.unmodifiableCollection(snapshot.getNamespaces());
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public boolean containsNamespace(Namespace namespace) {
+        return snapshot.containsNamespace(namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public String getProperty(Namespace namespace, String key) {
+        return snapshot.getProperty(namespace, key);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    String lookupProperty(Namespace namespace, String key) {
+        return snapshot.lookupProperty(namespace, key);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public PropertyStatistics enableStatistics() {
+        writeLock.lock();
+        try {
+            return super.enableStatistics();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The statistics are shared with the snapshots, which serve the reads and
+     * resolve the macros
+     *
+     * @param statistics
+     */
+    @Override
+    void setStatistics(PropertyStatistics statistics) {
+        writeLock.lock();
+        try {
+            super.setStatistics(statistics);
+            snapshot.setStatistics(statistics);
+            if (working != null) {
+                working.setStatistics(statistics);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param type
+     * @param parser
+     * @return
+     */
+    @Override
+    Object getTypedValue(Namespace namespace, String key, Object type, TypedValueCache.Parser parser) {
+        return snapshot.getTypedValue(namespace, key, type, parser);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    @Override
+    public String getString(Namespace namespace, String key, String defaultValue) {
+        return snapshot.getString(namespace, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean containsProperty(Namespace namespace, String key) {
+        return snapshot.containsProperty(namespace, key);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean containsNonEmptyProperty(Namespace namespace, String key) {
+        return snapshot.containsNonEmptyProperty(namespace, key);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public Map<String, String> getProperties(Namespace namespace) {
+        return Collections.unmodifiableMap(snapshot.getProperties(namespace));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param prefix
+     * @return
+     */
+    @Override
+    public Map<String, String> getPropertiesWithPrefix(Namespace namespace, String prefix) {
+        return snapshot.getPropertiesWithPrefix(namespace, prefix);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param pattern
+     * @return
+     */
+    @Override
+    public Map<String, String> getPropertiesMatching(Namespace namespace, String pattern) {
+        return snapshot.getPropertiesMatching(namespace, pattern);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public long getVersion(Namespace namespace) {
+        return snapshot.getVersion(namespace);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public PropertyManager freeze() {
+        return snapshot.freeze();
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    PropertyManager copy() {
+        return snapshot.copy();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param properties
+     */
+    @Override
+    void loadResolvedProperties(Namespace namespace, Map<String, String> properties) {
+        update(propertyManager -> propertyManager.loadResolvedProperties(namespace, properties));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    Set<String> getKeySet(Namespace namespace) {
+        return current().getKeySet(namespace);
+    }
+
+    /**
+     *
+     * @param key
+     * @param ignoredNamespaces
+     * @return
+     */
+    @Override
+    Namespace findFirstNamespace(String key, Set<String> ignoredNamespaces) {
+        return current().findFirstNamespace(key, ignoredNamespaces);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    Collection<PropertyKey> getUnresolvedProperties() {
+        return current().getUnresolvedProperties();
+    }
+
+    /**
+     * The macro pattern is a setting of the snapshot (or of the working copy)
+     *
+     * @param value
+     * @return
+     */
+    @Override
+    Set<String> extractMacroReferences(String value) {
+        return current().extractMacroReferences(value);
+    }
+
+    /**
+     *
+     * @param value
+     * @return
+     */
+    @Override
+    MacroTemplate compileMacros(String value) {
+        return current().compileMacros(value);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return snapshot.toString();
+    }
+}
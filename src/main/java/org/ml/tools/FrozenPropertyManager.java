@@ -0,0 +1,546 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable, compact snapshot of a PropertyManager, see
+ * {@link PropertyManager#freeze()}.
+ * <p>
+ * All properties are kept in flat arrays, sorted by namespace and key. A
+ * single open-addressed hash table over the combined hash of namespace and key
+ * maps to these arrays, so a lookup is one hash probe and does not need to
+ * compare namespace ids as a TreeMap would. Keys are interned through the
+ * {@link StringPool}, whether or not pooling is enabled.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class FrozenPropertyManager extends PropertyManager {
+
+    static final long serialVersionUID = 2905197702L;
+    private final Namespace[] namespaces;
+    private final int[] namespaceStart;          // Index of the first entry of each namespace (plus the end index)
+    private final int[] namespaceTable;          // Hash table of namespace slot + 1, 0 marks an empty bucket
+    private final String[] keys;
+    private final String[] values;
+    private final int[] entryNamespace;          // Namespace slot of each entry
+    private final int[] entryHash;
+    private final int[] entryTable;              // Hash table of entry index + 1, 0 marks an empty bucket
+    private transient NamespaceView[] namespaceViews;
+
+    /**
+     *
+     * @param propertyManager
+     */
+    FrozenPropertyManager(PropertyManager propertyManager) {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        super.setResolutionPolicy(propertyManager.getResolutionPolicy());
+        super.setAvoidOverwrites(propertyManager.doesAvoidOverwrites());
+        super.setMacroPattern(propertyManager.getMacroPattern());
+        super.setLookupPolicy(propertyManager.getLookupPolicy());
+
+        //.... Namespaces come in their natural (sorted) order
+        Collection<Namespace> sourceNamespaces = propertyManager.getNamespaces();
+        namespaces = sourceNamespaces.toArray(new Namespace[sourceNamespaces.size()]);
+        namespaceStart = new int[namespaces.length + 1];
+        int size = 0;
+        for (int i = 0; i < namespaces.length; i++) {
+            namespaceStart[i] = size;
+            size += propertyManager.getProperties(namespaces[i]).size();
+        }
+        namespaceStart[namespaces.length] = size;
+
+        namespaceTable = new int[tableSize(namespaces.length)];
+        for (int i = 0; i < namespaces.length; i++) {
+            int bucket = spread(namespaces[i].hashCode()) & (namespaceTable.length - 1);
+            while (namespaceTable[bucket] != 0) {
+                bucket = (bucket + 1) & (namespaceTable.length - 1);
+            }
+            namespaceTable[bucket] = i + 1;
+        }
+
+        keys = new String[size];
+        values = new String[size];
+        entryNamespace = new int[size];
+        entryHash = new int[size];
+        entryTable = new int[tableSize(size)];
+        int index = 0;
+        for (int i = 0; i < namespaces.length; i++) {
+            for (Map.Entry<String, String> entry : propertyManager.getProperties(namespaces[i]).entrySet()) {
+                keys[index] = StringPool.internAlways(entry.getKey());
+                values[index] = entry.getValue();
+                entryNamespace[index] = i;
+                entryHash[index] = hash(namespaces[i], keys[index]);
+                int bucket = spread(entryHash[index]) & (entryTable.length - 1);
+                while (entryTable[bucket] != 0) {
+                    bucket = (bucket + 1) & (entryTable.length - 1);
+                }
+                entryTable[bucket] = index + 1;
+                index++;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param slot
+     * @return The read-only map of the properties in the namespace slot
+     */
+    private Map<String, String> getNamespaceView(int slot) {
+        if (namespaceViews == null) {
+            NamespaceView[] views = new NamespaceView[namespaces.length];
+            for (int i = 0; i < namespaces.length; i++) {
+                views[i] = new NamespaceView(i, namespaceStart[i], namespaceStart[i + 1]);
+            }
+            namespaceViews = views;
+        }
+        return namespaceViews[slot];
+    }
+
+    /**
+     * A table with a load factor of at most 0.5
+     *
+     * @param entries
+     * @return
+     */
+    private static int tableSize(int entries) {
+        int size = 2;
+        while (size < 2 * entries) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @param h
+     * @return
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    private static int hash(Namespace namespace, String key) {
+        return 31 * namespace.hashCode() + key.hashCode();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return The index of the entry or -1 if there is none
+     */
+    private int find(Namespace namespace, String key) {
+        int h = hash(namespace, key);
+        int mask = entryTable.length - 1;
+        int bucket = spread(h) & mask;
+        int slot;
+        while ((slot = entryTable[bucket]) != 0) {
+            int index = slot - 1;
+            if (entryHash[index] == h && key.equals(keys[index]) && namespace.equals(namespaces[entryNamespace[index]])) {
+                return index;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The slot of the namespace or -1 if there is none
+     */
+    private int findNamespace(Namespace namespace) {
+        int mask = namespaceTable.length - 1;
+        int bucket = spread(namespace.hashCode()) & mask;
+        int slot;
+        while ((slot = namespaceTable[bucket]) != 0) {
+            if (namespace.equals(namespaces[slot - 1])) {
+                return slot - 1;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first entry of a namespace whose key is not less than the given
+     * key
+     *
+     * @param slot
+     * @param key
+     * @return
+     */
+    private int lowerBound(int slot, String key) {
+        int low = namespaceStart[slot];
+        int high = namespaceStart[slot + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A read-only map of a range of the properties of one namespace, backed by
+     * the flat arrays
+     */
+    private class NamespaceView extends AbstractMap<String, String> {
+
+        private final int slot;
+        private final int start;
+        private final int end;
+
+        /**
+         *
+         * @param slot
+         * @param start The index of the first entry
+         * @param end The index after the last entry
+         */
+        NamespaceView(int slot, int start, int end) {
+            this.slot = slot;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         *
+         * @param key
+         * @return
+         */
+        private int indexOf(Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+            int index = find(namespaces[slot], (String) key);
+            return index >= start && index < end ? index : -1;
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return NamespaceView.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int index = start;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < end;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(keys[index], values[index]);
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    String lookupProperty(Namespace namespace, String key) {
+        int index = find(namespace, key);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean containsProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        return find(namespace, key) >= 0;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public Collection<Namespace> getNamespaces() {
+        return Collections.unmodifiableList(Arrays.asList(namespaces));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public boolean containsNamespace(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        return findNamespace(namespace) >= 0;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public Map<String, String> getProperties(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        int slot = findNamespace(namespace);
+        return slot < 0 ? Collections.emptyMap() : getNamespaceView(slot);
+    }
+
+    /**
+     * The views iterate over the sorted arrays
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    Map<String, String> getSortedProperties(Namespace namespace) {
+        return getProperties(namespace);
+    }
+
+    /**
+     * The keys of a namespace are sorted, so the properties with a common
+     * prefix are a contiguous range of the arrays
+     *
+     * @param namespace
+     * @param prefix
+     * @return
+     */
+    @Override
+    public Map<String, String> getPropertiesWithPrefix(Namespace namespace, String prefix) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix may not be null");
+        }
+        int slot = findNamespace(namespace);
+        if (slot < 0) {
+            return Collections.emptyMap();
+        }
+        int start = lowerBound(slot, prefix);
+        int end = start;
+        while (end < namespaceStart[slot + 1] && keys[end].startsWith(prefix)) {
+            end++;
+        }
+        return new NamespaceView(slot, start, end);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    Set<String> getKeySet(Namespace namespace) {
+        return getProperties(namespace).keySet();
+    }
+
+    /**
+     * A frozen instance is its own snapshot
+     *
+     * @return
+     */
+    @Override
+    public PropertyManager freeze() {
+        return this;
+    }
+
+    /**
+     * The copy is a regular (mutable) PropertyManager
+     *
+     * @return
+     */
+    @Override
+    PropertyManager copy() {
+        PropertyManager copy = super.copy();
+        for (int i = 0; i < namespaces.length; i++) {
+            copy.loadResolvedProperties(namespaces[i], getNamespaceView(i));
+        }
+        return copy;
+    }
+
+    /**
+     *
+     * @param resolutionPolicy
+     */
+    @Override
+    public void setResolutionPolicy(ResolutionPolicy resolutionPolicy) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @param patternString
+     */
+    @Override
+    public void setMacroPattern(String patternString) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @param avoidOverwrites
+     */
+    @Override
+    public void setAvoidOverwrites(boolean avoidOverwrites) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @param lookupPolicy
+     */
+    @Override
+    public void setLookupPolicy(LookupPolicy lookupPolicy) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param value
+     */
+    @Override
+    public void setProperty(Namespace namespace, String key, String value) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    @Override
+    public void removeProperty(Namespace namespace, String key) {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     */
+    @Override
+    public void beginBulk() {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     */
+    @Override
+    public void commitBulk() {
+        throw new UnsupportedOperationException("A frozen PropertyManager can not be modified");
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(300);
+        for (int i = 0; i < namespaces.length; i++) {
+            boolean isDefault = namespaces[i].equals(DEFAULT_NAMESPACE);
+            for (int index = namespaceStart[i]; index < namespaceStart[i + 1]; index++) {
+                if (isDefault) {
+                    sb.append("(): ");
+                } else {
+                    sb.append("(");
+                    sb.append(namespaces[i]);
+                    sb.append("): ");
+                }
+                sb.append(keys[index]);
+                sb.append(" - ");
+                sb.append(values[index]);
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+/**
+ * Maps the key of a property to the name used for it by an external source,
+ * e. g. "db.url" to "DB_URL" for an environment variable.
+ *
+ * @author Dr. Matthias Laux
+ */
+public interface IKeyMapper {
+
+    /**
+     * Keys in the default namespace are used as they are, other namespaces
+     * are not mapped
+     */
+    IKeyMapper IDENTITY = (namespace, key) -> namespace.equals(PropertyManager.DEFAULT_NAMESPACE) ? key : null;
+
+    /**
+     * Keys in the default namespace are converted to upper case with all
+     * characters other than letters and digits replaced by '_', other
+     * namespaces are not mapped
+     */
+    IKeyMapper ENVIRONMENT = environment("");
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return The external name or null if the property has no external name
+     */
+    String map(Namespace namespace, String key);
+
+    /**
+     * Like {@link #ENVIRONMENT}, with a prefix for the names, e. g. "APP_"
+     *
+     * @param prefix
+     * @return
+     */
+    static IKeyMapper environment(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix may not be null");
+        }
+        return (namespace, key) -> {
+            if (!namespace.equals(PropertyManager.DEFAULT_NAMESPACE)) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder(prefix.length() + key.length());
+            sb.append(prefix);
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                sb.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+            }
+            return sb.toString();
+        };
+    }
+}
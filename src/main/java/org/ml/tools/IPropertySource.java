@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A source of properties which can be used as a layer of a
+ * {@link LayeredPropertyManager}. Sources which can not (or should not) list
+ * their properties, such as the environment, only answer lookups; they
+ * override the properties listed by other layers.
+ *
+ * @author Dr. Matthias Laux
+ */
+public interface IPropertySource {
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return The raw value of the property or null if the source does not
+     * contain it
+     */
+    String getProperty(Namespace namespace, String key);
+
+    /**
+     *
+     * @return The namespaces of the properties which can be listed
+     */
+    Collection<Namespace> getNamespaces();
+
+    /**
+     *
+     * @param namespace
+     * @return The keys of the properties in the namespace which can be listed
+     */
+    Set<String> getKeys(Namespace namespace);
+
+    /**
+     * A counter which increases whenever the content of the source changes.
+     * The LayeredPropertyManager drops the values it has cached from this
+     * source (and from all sources with lower precedence) when the counter
+     * changes
+     *
+     * @return
+     */
+    long getVersion();
+}
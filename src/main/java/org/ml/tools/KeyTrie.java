@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The keys of one namespace, organized as a tree of their segments (separated
+ * by {@link PropertyManager#KEY_SEPARATOR}). This is used to answer wildcard
+ * queries such as "db.*.url" by walking only the branches which can match, so
+ * the effort depends on the size of the result rather than on the number of
+ * keys.
+ * <p>
+ * In a pattern, a segment "*" matches exactly one segment, a segment "**"
+ * matches any number of segments (including none), and a '*' within a segment
+ * matches any sequence of characters within that segment.
+ *
+ * @author Dr. Matthias Laux
+ */
+final class KeyTrie {
+
+    private final Node root = new Node();
+
+    /**
+     *
+     */
+    private static final class Node {
+
+        private Map<String, Node> children = null;
+        private String key = null;   // The complete key if a property ends at this node
+    }
+
+    /**
+     *
+     * @param keys
+     */
+    KeyTrie(Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys may not be null");
+        }
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    /**
+     *
+     * @param key
+     */
+    void add(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        Node node = root;
+        for (String segment : split(key)) {
+            if (node.children == null) {
+                node.children = new HashMap<>();
+            }
+            node = node.children.computeIfAbsent(segment, k -> new Node());
+        }
+        node.key = key;
+    }
+
+    /**
+     *
+     * @param key
+     */
+    void remove(String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        String[] segments = split(key);
+        Node[] path = new Node[segments.length + 1];
+        path[0] = root;
+        for (int i = 0; i < segments.length; i++) {
+            path[i + 1] = path[i].children == null ? null : path[i].children.get(segments[i]);
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        path[segments.length].key = null;
+
+        //.... Drop the nodes which no longer lead to any key
+        for (int i = segments.length; i > 0; i--) {
+            Node node = path[i];
+            if (node.key != null || (node.children != null && !node.children.isEmpty())) {
+                break;
+            }
+            path[i - 1].children.remove(segments[i - 1]);
+        }
+    }
+
+    /**
+     *
+     * @param pattern
+     * @return The keys matching the pattern, in no particular order
+     */
+    List<String> find(String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern may not be null");
+        }
+        List<String> keys = new ArrayList<>();
+        collect(root, split(pattern), 0, keys);
+        return keys;
+    }
+
+    /**
+     *
+     * @param node
+     * @param segments
+     * @param index
+     * @param keys
+     */
+    private static void collect(Node node, String[] segments, int index, List<String> keys) {
+        if (index == segments.length) {
+            if (node.key != null) {
+                keys.add(node.key);
+            }
+            return;
+        }
+        String segment = segments[index];
+        if (segment.equals("**")) {
+            collect(node, segments, index + 1, keys);
+
+            //.... Skip trailing "**" segments, they would only produce the same keys again
+            if (node.children != null && !(index + 1 < segments.length && segments[index + 1].equals("**"))) {
+                for (Node child : node.children.values()) {
+                    collect(child, segments, index, keys);
+                }
+            }
+        } else if (node.children == null) {
+            return;
+        } else if (segment.indexOf('*') < 0) {
+            Node child = node.children.get(segment);
+            if (child != null) {
+                collect(child, segments, index + 1, keys);
+            }
+        } else {
+            for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+                if (matches(segment, entry.getKey())) {
+                    collect(entry.getValue(), segments, index + 1, keys);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param glob A segment containing '*' wildcards
+     * @param segment
+     * @return
+     */
+    private static boolean matches(String glob, String segment) {
+        int g = 0;
+        int s = 0;
+        int star = -1;
+        int mark = 0;
+        while (s < segment.length()) {
+            if (g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                mark = s;
+            } else if (g < glob.length() && glob.charAt(g) == segment.charAt(s)) {
+                g++;
+                s++;
+            } else if (star >= 0) {
+                g = star + 1;
+                s = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    private static String[] split(String key) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = key.indexOf(PropertyManager.KEY_SEPARATOR, start)) >= 0) {
+            segments.add(key.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(key.substring(start));
+        return segments.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PropertyManager which merges ordered layers of property sources, e. g.
+ * system properties over environment variables over XML files. The
+ * properties set on the instance itself form an in-memory layer with the
+ * highest precedence, followed by the sources in the order in which they are
+ * provided. Macros are resolved across all layers, with the same precedence
+ * and the resolution policy of this instance (the LAZY variants behave like
+ * their eager counterparts, since all values are resolved on demand).
+ * <p>
+ * Resolved values are cached together with the lowest layer they depend on.
+ * When the version of a source changes, only the values depending on that
+ * source (or on a source with lower precedence) are dropped. Changes of the
+ * sources are detected on access; they are reflected by
+ * {@link #getVersion()}, but not reported to change listeners.
+ * <p>
+ * The sources are not serialized, since they generally wrap external state
+ * like files or the environment. A deserialized instance only contains the
+ * properties set on the instance itself.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class LayeredPropertyManager extends PropertyManager {
+
+    static final long serialVersionUID = 7203311960L;
+    private static final int OWN_LAYER = -1;
+
+    //.... The sources in the order of their precedence, not serialized
+    private transient List<IPropertySource> sources;
+    private ResolutionPolicy layeredResolutionPolicy = DEFAULT_RESOLUTION_POLICY;
+    private transient volatile LayerCache layerCache;
+
+    /**
+     * A resolved value and the lowest layer it depends on
+     */
+    private static class Resolved {
+
+        private final String value;
+        private final int depth;
+
+        /**
+         *
+         * @param value
+         * @param depth
+         */
+        private Resolved(String value, int depth) {
+            this.value = value;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Cached lookups, valid for the versions of this instance and the sources
+     * recorded with them
+     */
+    private static class LayerCache {
+
+        private final long ownVersion;
+        private final long[] versions;
+        private final Map<PropertyKey, Resolved> values = new ConcurrentHashMap<>();
+        private final Map<Namespace, NavigableSet<String>> keys = new ConcurrentHashMap<>();
+        private final Map<Namespace, KeyTrie> keyTries = new ConcurrentHashMap<>();
+        private volatile Collection<Namespace> namespaces;
+
+        /**
+         *
+         * @param ownVersion
+         * @param versions
+         */
+        private LayerCache(long ownVersion, long[] versions) {
+            this.ownVersion = ownVersion;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * Create an instance with the provided sources, in the order of their
+     * precedence (the first one wins)
+     *
+     * @param sources
+     */
+    public LayeredPropertyManager(IPropertySource... sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("sources may not be null");
+        }
+        for (IPropertySource source : sources) {
+            if (source == null) {
+                throw new IllegalArgumentException("sources may not contain null");
+            }
+        }
+        this.sources = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(sources)));
+
+        //.... The own properties are stored with their raw values, the macros are resolved across the layers
+        super.setResolutionPolicy(ResolutionPolicy.NONE);
+    }
+
+    /**
+     *
+     * @param sources
+     * @param layeredResolutionPolicy
+     */
+    private LayeredPropertyManager(List<IPropertySource> sources, ResolutionPolicy layeredResolutionPolicy) {
+        this.sources = sources;
+        this.layeredResolutionPolicy = layeredResolutionPolicy;
+    }
+
+    /**
+     * The sources are not serialized, so a deserialized instance has none
+     *
+     * @param in
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        sources = Collections.emptyList();
+    }
+
+    /**
+     *
+     * @return The sources in the order of their precedence
+     */
+    public List<IPropertySource> getSources() {
+        return sources;
+    }
+
+    /**
+     *
+     * @param resolutionPolicy
+     */
+    @Override
+    public synchronized void setResolutionPolicy(ResolutionPolicy resolutionPolicy) {
+        if (resolutionPolicy == null) {
+            throw new IllegalArgumentException("resolutionPolicy may not be null");
+        }
+        layeredResolutionPolicy = resolutionPolicy;
+        clearLayerCache();
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public ResolutionPolicy getResolutionPolicy() {
+        return layeredResolutionPolicy;
+    }
+
+    /**
+     *
+     * @param patternString
+     */
+    @Override
+    public synchronized void setMacroPattern(String patternString) {
+        super.setMacroPattern(patternString);
+        clearLayerCache();
+    }
+
+    /**
+     * The version changes with every modification of this instance or of one
+     * of its sources
+     *
+     * @return
+     */
+    @Override
+    public long getVersion() {
+        long version = super.getVersion();
+        for (IPropertySource source : sources) {
+            version += source.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * Any modification of a source counts as a modification of all namespaces
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public long getVersion(Namespace namespace) {
+        long version = super.getVersion(namespace);
+        for (IPropertySource source : sources) {
+            version += source.getVersion();
+        }
+        return version;
+    }
+
+    /**
+     *
+     */
+    private void clearLayerCache() {
+        layerCache = null;
+        getTypedValueCache().clear();
+    }
+
+    /**
+     * Check the versions of this instance and of the sources and drop the
+     * values which may have changed
+     *
+     * @return
+     */
+    private LayerCache getLayerCache() {
+        LayerCache cache = layerCache;
+        if (cache != null && cache.ownVersion == super.getVersion()) {
+            int i = 0;
+            while (i < sources.size() && cache.versions[i] == sources.get(i).getVersion()) {
+                i++;
+            }
+            if (i == sources.size()) {
+                return cache;
+            }
+        }
+        return updateLayerCache();
+    }
+
+    /**
+     *
+     * @return
+     */
+    private synchronized LayerCache updateLayerCache() {
+        LayerCache cache = layerCache;
+        long ownVersion = super.getVersion();
+        long[] versions = new long[sources.size()];
+        int changedLayer = sources.size();
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = sources.get(i).getVersion();
+            if (cache != null && changedLayer == sources.size() && cache.versions[i] != versions[i]) {
+                changedLayer = i;
+            }
+        }
+        if (cache != null && cache.ownVersion == ownVersion && changedLayer == sources.size()) {
+            return cache;
+        }
+        LayerCache newCache = new LayerCache(ownVersion, versions);
+        if (cache == null || cache.ownVersion != ownVersion) {
+            getTypedValueCache().clear();
+        } else {
+
+            //.... Keep the values which only depend on layers above the changed one
+            TypedValueCache typedValueCache = getTypedValueCache();
+            for (Map.Entry<PropertyKey, Resolved> entry : cache.values.entrySet()) {
+                if (entry.getValue().depth < changedLayer) {
+                    newCache.values.put(entry.getKey(), entry.getValue());
+                } else {
+                    typedValueCache.invalidate(entry.getKey());
+                }
+            }
+        }
+        layerCache = newCache;
+        return newCache;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    String lookupProperty(Namespace namespace, String key) {
+        LayerCache cache = getLayerCache();
+        PropertyKey propertyKey = new PropertyKey(namespace, key);
+        Resolved resolved = cache.values.get(propertyKey);
+        if (resolved == null) {
+            resolved = resolve(cache, propertyKey);
+        }
+        return resolved.value;
+    }
+
+    /**
+     * The typed values are cached as well, so the sources have to be checked
+     * first
+     *
+     * @param namespace
+     * @param key
+     * @param type
+     * @param parser
+     * @return
+     */
+    @Override
+    Object getTypedValue(Namespace namespace, String key, Object type, TypedValueCache.Parser parser) {
+        getLayerCache();
+        return super.getTypedValue(namespace, key, type, parser);
+    }
+
+    /**
+     *
+     * @param cache
+     * @param propertyKey
+     * @return
+     */
+    private synchronized Resolved resolve(LayerCache cache, PropertyKey propertyKey) {
+        Set<PropertyKey> cyclic = new HashSet<>();
+        return resolve(cache, propertyKey, new ArrayDeque<>(), cyclic);
+    }
+
+    /**
+     * Resolve a value and the values it refers to. Properties which are part
+     * of a circular reference keep their raw values
+     *
+     * @param cache
+     * @param propertyKey
+     * @param path The properties currently being resolved
+     * @param cyclic The properties found to be part of a circular reference
+     * @return
+     */
+    private Resolved resolve(LayerCache cache, PropertyKey propertyKey, Deque<PropertyKey> path, Set<PropertyKey> cyclic) {
+        Resolved resolved = cache.values.get(propertyKey);
+        if (resolved != null) {
+            return resolved;
+        }
+        Namespace namespace = propertyKey.getNamespace();
+        String key = propertyKey.getKey();
+        int depth = OWN_LAYER;
+        String value = super.lookupProperty(namespace, key);
+        while (value == null && ++depth < sources.size()) {
+            value = sources.get(depth).getProperty(namespace, key);
+        }
+        depth = Math.min(depth, sources.size() - 1);
+        MacroTemplate template = value == null || layeredResolutionPolicy == ResolutionPolicy.NONE ? null : compileMacros(value);
+        if (template != null) {
+            int[] maxDepth = {depth};
+            boolean allNamespaces = layeredResolutionPolicy == ResolutionPolicy.ALL_NAMESPACES || layeredResolutionPolicy == ResolutionPolicy.LAZY_ALL_NAMESPACES;
+            path.push(propertyKey);
+            String resolvedValue = template.resolve(reference -> {
+                PropertyKey target = locateMacroTarget(namespace, reference);
+
+                //.... The owner of the target may change with any layer (see locateMacroTarget())
+                if (target == null || allNamespaces) {
+                    maxDepth[0] = sources.size() - 1;
+                }
+                if (target == null) {
+                    return null;
+                }
+                if (path.contains(target)) {
+                    markCyclic(path, target, cyclic);
+                    return null;
+                }
+                Resolved targetValue = resolve(cache, target, path, cyclic);
+                maxDepth[0] = Math.max(maxDepth[0], targetValue.depth);
+                return targetValue.value;
+            });
+            path.pop();
+            if (cyclic.contains(propertyKey)) {
+                depth = sources.size() - 1;
+            } else {
+                value = resolvedValue;
+                depth = maxDepth[0];
+            }
+        }
+        resolved = new Resolved(value, depth);
+        cache.values.put(propertyKey, resolved);
+        return resolved;
+    }
+
+    /**
+     *
+     * @param path
+     * @param target
+     * @param cyclic
+     */
+    private static void markCyclic(Deque<PropertyKey> path, PropertyKey target, Set<PropertyKey> cyclic) {
+        Iterator<PropertyKey> iterator = path.iterator();
+        PropertyKey propertyKey;
+        do {
+            propertyKey = iterator.next();
+            cyclic.add(propertyKey);
+        } while (!propertyKey.equals(target));
+    }
+
+    /**
+     * ALL_NAMESPACES depends on the namespaces of all layers, so the caller
+     * has to treat the result as depending on the lowest layer
+     *
+     * @param namespace
+     * @param referencedKey
+     * @return The location of the referenced property or null if there is none
+     */
+    private PropertyKey locateMacroTarget(Namespace namespace, String referencedKey) {
+        switch (layeredResolutionPolicy) {
+            case ALL_NAMESPACES:
+            case LAZY_ALL_NAMESPACES:
+                Namespace owner = findFirstNamespace(referencedKey, Collections.emptySet());
+                return owner == null ? null : new PropertyKey(owner, referencedKey);
+            case WITHIN_NAMESPACE:
+            case LAZY_WITHIN_NAMESPACE:
+                return new PropertyKey(namespace, referencedKey);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return True if one of the layers contains the property
+     */
+    private boolean containsRawProperty(Namespace namespace, String key) {
+        if (super.lookupProperty(namespace, key) != null) {
+            return true;
+        }
+        for (IPropertySource source : sources) {
+            if (source.getProperty(namespace, key) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The default namespace is always searched, since sources which do not
+     * list their properties usually provide it
+     *
+     * @param key
+     * @param ignoredNamespaces
+     * @return
+     */
+    @Override
+    Namespace findFirstNamespace(String key, Set<String> ignoredNamespaces) {
+        Set<Namespace> namespaces = new TreeSet<>(getNamespaces());
+        namespaces.add(DEFAULT_NAMESPACE);
+        for (Namespace namespace : namespaces) {
+            if (isVisible(namespace, ignoredNamespaces) && containsRawProperty(namespace, key)) {
+                return namespace;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean containsProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        return lookupProperty(namespace, key) != null;
+    }
+
+    /**
+     * The namespaces of this instance and of the sources which list their
+     * properties
+     *
+     * @return
+     */
+    @Override
+    public Collection<Namespace> getNamespaces() {
+        LayerCache cache = getLayerCache();
+        Collection<Namespace> namespaces = cache.namespaces;
+        if (namespaces == null) {
+            Set<Namespace> allNamespaces = new TreeSet<>(super.getNamespaces());
+            for (IPropertySource source : sources) {
+                allNamespaces.addAll(source.getNamespaces());
+            }
+            namespaces = Collections.unmodifiableSet(allNamespaces);
+            cache.namespaces = namespaces;
+        }
+        return namespaces;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public boolean containsNamespace(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        return getNamespaces().contains(namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The keys of this instance and of the sources which list their
+     * properties
+     */
+    @Override
+    Set<String> getKeySet(Namespace namespace) {
+        return getKeys(getLayerCache(), namespace);
+    }
+
+    /**
+     *
+     * @param cache
+     * @param namespace
+     * @return
+     */
+    private NavigableSet<String> getKeys(LayerCache cache, Namespace namespace) {
+        return cache.keys.computeIfAbsent(namespace, n -> {
+            NavigableSet<String> keys = new TreeSet<>(super.getKeySet(n));
+            for (IPropertySource source : sources) {
+                keys.addAll(source.getKeys(n));
+            }
+            return Collections.unmodifiableNavigableSet(keys);
+        });
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return A copy of the merged properties in the namespace given
+     */
+    @Override
+    public Map<String, String> getProperties(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        return collectProperties(namespace, getKeySet(namespace));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param prefix
+     * @return A copy of the merged properties with the prefix given
+     */
+    @Override
+    public Map<String, String> getPropertiesWithPrefix(Namespace namespace, String prefix) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix may not be null");
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : getKeys(getLayerCache(), namespace).tailSet(prefix, true)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+        return collectProperties(namespace, keys);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param pattern
+     * @return
+     */
+    @Override
+    public Map<String, String> getPropertiesMatching(Namespace namespace, String pattern) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern may not be null");
+        }
+        LayerCache cache = getLayerCache();
+        KeyTrie trie = cache.keyTries.computeIfAbsent(namespace, n -> new KeyTrie(getKeys(cache, n)));
+        return collectProperties(namespace, trie.find(pattern));
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param keys
+     * @return
+     */
+    private Map<String, String> collectProperties(Namespace namespace, Collection<String> keys) {
+        Map<String, String> properties = new TreeMap<>();
+        for (String key : keys) {
+            String value = lookupProperty(namespace, key);
+            if (value != null) {
+                properties.put(key, value);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * The copy shares the sources of this instance
+     *
+     * @return
+     */
+    @Override
+    PropertyManager copy() {
+        LayeredPropertyManager copy = new LayeredPropertyManager(sources, layeredResolutionPolicy);
+        copyInto(copy);
+        return copy;
+    }
+}
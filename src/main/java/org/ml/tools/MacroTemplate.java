@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A property value which has been split into its literal parts and the macros
+ * it contains. Resolving the macros is then a plain concatenation of the
+ * literal parts and the values of the referenced properties, without any
+ * regular expression matching. Unlike {@link Matcher#appendReplacement}, the
+ * values are inserted as they are, i. e. '$' and '\' have no special meaning.
+ * Templates are immutable, so they can be shared between instances.
+ *
+ * @author Dr. Matthias Laux
+ */
+final class MacroTemplate {
+
+    //.... literals[i] precedes macro i, the last literal follows the last macro
+    private final String[] literals;
+    private final String[] macros;
+    private final String[] references;
+    private final Set<String> referenceSet;
+    private final int literalLength;
+
+    /**
+     * The macro syntax of a PropertyManager: the pattern detecting the macros
+     * (its first capturing group yields the referenced key) and the literal
+     * text every macro starts with, if the pattern has one. Values which do not
+     * contain that text are known to be free of macros without running the
+     * pattern
+     */
+    static final class Syntax {
+
+        private final Pattern pattern;
+        private final String prefix;
+
+        /**
+         *
+         * @param pattern
+         */
+        Syntax(Pattern pattern) {
+            if (pattern == null) {
+                throw new IllegalArgumentException("pattern may not be null");
+            }
+            this.pattern = pattern;
+            this.prefix = getLiteralPrefix(pattern);
+        }
+
+        /**
+         *
+         * @return
+         */
+        Pattern getPattern() {
+            return pattern;
+        }
+
+        /**
+         *
+         * @param value
+         * @return The template for the value, or null if the value does not
+         * contain any macros
+         */
+        MacroTemplate compile(String value) {
+            if (value == null) {
+                throw new IllegalArgumentException("value may not be null");
+            }
+            if (!prefix.isEmpty() && !value.contains(prefix)) {
+                return null;
+            }
+            Matcher matcher = pattern.matcher(value);
+            if (!matcher.find()) {
+                return null;
+            }
+            Builder builder = new Builder();
+            int position = 0;
+            do {
+                String reference = matcher.group(1);
+                if (reference != null) {
+                    builder.add(value.substring(position, matcher.start()), matcher.group(), reference);
+                    position = matcher.end();
+                }
+            } while (matcher.find());
+            return builder.build(value.substring(position));
+        }
+
+        /**
+         * The text every match of the pattern starts with. Only plain
+         * characters and escaped special characters are taken into account;
+         * patterns with flags or alternatives have no prefix
+         *
+         * @param pattern
+         * @return
+         */
+        private static String getLiteralPrefix(Pattern pattern) {
+            String regex = pattern.pattern();
+            if (pattern.flags() != 0 || regex.indexOf('|') >= 0) {
+                return "";
+            }
+            StringBuilder prefix = new StringBuilder();
+            int i = 0;
+            while (i < regex.length()) {
+                char c = regex.charAt(i);
+                int next = i + 1;
+                if (c == '\\') {
+                    if (next == regex.length() || Character.isLetterOrDigit(regex.charAt(next))) {
+                        break;   // Character classes, quoting, back references etc.
+                    }
+                    c = regex.charAt(next++);
+                } else if ("[](){}.*+?^$".indexOf(c) >= 0) {
+                    break;
+                }
+
+                //.... A quantifier makes the character optional or repeatable
+                if (next < regex.length() && "*+?{".indexOf(regex.charAt(next)) >= 0) {
+                    break;
+                }
+                prefix.append(c);
+                i = next;
+            }
+            return prefix.toString();
+        }
+    }
+
+    /**
+     * Collects the segments of a template
+     */
+    private static final class Builder {
+
+        private final List<String> literals = new ArrayList<>();
+        private final List<String> macros = new ArrayList<>();
+        private final List<String> references = new ArrayList<>();
+
+        /**
+         *
+         * @param literal
+         * @param macro
+         * @param reference
+         */
+        void add(String literal, String macro, String reference) {
+            literals.add(literal);
+            macros.add(macro);
+            references.add(reference);
+        }
+
+        /**
+         *
+         * @param tail
+         * @return
+         */
+        MacroTemplate build(String tail) {
+            if (macros.isEmpty()) {
+                return null;
+            }
+            literals.add(tail);
+            return new MacroTemplate(literals.toArray(new String[0]), macros.toArray(new String[0]), references.toArray(new String[0]));
+        }
+    }
+
+    /**
+     *
+     * @param literals
+     * @param macros
+     * @param references
+     */
+    private MacroTemplate(String[] literals, String[] macros, String[] references) {
+        this.literals = literals;
+        this.macros = macros;
+        this.references = references;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        literalLength = length;
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, references);
+        referenceSet = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     *
+     * @return The keys referenced by the macros
+     */
+    Set<String> getReferences() {
+        return referenceSet;
+    }
+
+    /**
+     * Replace the macros with the values of the properties they refer to
+     *
+     * @param lookup Yields the value for a referenced key, or null if the
+     * macro can not be resolved and has to be kept as it is
+     * @return
+     */
+    String resolve(Function<String, String> lookup) {
+        if (lookup == null) {
+            throw new IllegalArgumentException("lookup may not be null");
+        }
+        String[] values = new String[references.length];
+        int length = literalLength;
+        for (int i = 0; i < references.length; i++) {
+            String value = lookup.apply(references[i]);
+            values[i] = value == null ? macros[i] : value;
+            length += values[i].length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < values.length; i++) {
+            sb.append(literals[i]).append(values[i]);
+        }
+        return sb.append(literals[values.length]).toString();
+    }
+}
@@ -25,40 +25,108 @@ package org.ml.tools;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * A namespace for properties, identified by a sequence of keys. Instances
+ * obtained from {@link #of(String...)} or {@link #derive(String)} are
+ * canonical: there is exactly one such instance per namespace, so comparing
+ * two of them only takes a reference comparison. The canonical instances are
+ * kept for the lifetime of the application, which is fine for the bounded set
+ * of namespaces of a configuration. Instances created with the constructor are
+ * equal to the canonical instance of their namespace, but have to compare the
+ * ids.
  *
  * @author Dr. Matthias Laux
  */
 public class Namespace implements Comparable<Namespace>, Serializable {
 
     static final long serialVersionUID = 1127987667L;
-    private String id;
-    private int hashCode = 0;
     private static final char SEPARATOR_CHAR = ':';
-    private List<String> keys = new ArrayList<>();
+    private static final ConcurrentHashMap<String, Namespace> CANONICAL_NAMESPACES = new ConcurrentHashMap<>();
+    private final String id;
+    private final int hashCode;
+    private transient final boolean canonical;
+
+    //.... The canonical instances derived from this one, by extension key
+    private transient volatile ConcurrentHashMap<String, Namespace> children;
+
+    //.... This namespace and its ancestors, computed on demand for canonical instances
+    private transient volatile List<Namespace> fallbackChain;
 
     /**
      *
      * @param keys
      */
     public Namespace(String... keys) {
+        this(join(keys), false);
+    }
+
+    /**
+     *
+     * @param id
+     * @param canonical
+     */
+    private Namespace(String id, boolean canonical) {
+
+        //.... Equal namespaces share their id through the pool
+        this.id = StringPool.intern(id);
+        this.canonical = canonical;
+        hashCode = id.hashCode();
+    }
+
+    /**
+     *
+     * @param keys
+     * @return
+     */
+    private static String join(String... keys) {
         if (keys == null) {
             throw new IllegalArgumentException("keys may not be null");
         }
+        return keys.length == 1 ? keys[0] : String.join(String.valueOf(SEPARATOR_CHAR), keys);
+    }
+
+    /**
+     * Get the canonical instance of a namespace
+     *
+     * @param keys
+     * @return
+     */
+    public static Namespace of(String... keys) {
+        return canonicalize(join(keys));
+    }
 
-        StringBuilder sb = new StringBuilder(200);
-        int i = 0;
-        for (String key : keys) {
-            sb.append(key);
-            sb.append(SEPARATOR_CHAR);
-            this.keys.add(keys[i++]);
+    /**
+     *
+     * @param id
+     * @return
+     */
+    private static Namespace canonicalize(String id) {
+        Namespace namespace = CANONICAL_NAMESPACES.get(id);
+        if (namespace == null) {
+            namespace = CANONICAL_NAMESPACES.computeIfAbsent(id, k -> new Namespace(k, true));
         }
+        return namespace;
+    }
 
-        id = sb.toString();
-        id = id.substring(0, id.length() - 1);
-        hashCode = id.hashCode();
+    /**
+     *
+     * @return The canonical instance of this namespace
+     */
+    public Namespace canonical() {
+        return canonical ? this : canonicalize(id);
+    }
+
+    /**
+     * Deserialized instances are replaced by the canonical ones
+     *
+     * @return
+     */
+    private Object readResolve() {
+        return getClass() == Namespace.class ? canonicalize(id) : this;
     }
 
     /**
@@ -77,19 +145,24 @@ public class Namespace implements Comparable<Namespace>, Serializable {
      */
     @Override
     public boolean equals(Object namespace) {
-        if (namespace == null) {
-            return false;
-        }
         if (namespace == this) {
             return true;
         }
-        if (namespace.getClass() != getClass()) {
+        if (namespace == null || namespace.getClass() != getClass()) {
+            return false;
+        }
+        Namespace other = (Namespace) namespace;
+
+        //.... There is only one canonical instance per namespace
+        if (canonical && other.canonical) {
             return false;
         }
-        return namespace.toString().equals(id);
+        return hashCode == other.hashCode && id.equals(other.id);
     }
 
     /**
+     * Get the canonical namespace with the given key appended. The derived
+     * namespaces are cached per parent
      *
      * @param extensionKey
      * @return
@@ -98,13 +171,57 @@ public class Namespace implements Comparable<Namespace>, Serializable {
         if (extensionKey == null) {
             throw new IllegalArgumentException("extensionKey may not be null");
         }
-        String[] newKeys = new String[keys.size() + 1];
-        int i = 0;
-        for (String key : keys) {
-            newKeys[i++] = key;
+        if (!canonical) {
+            return canonical().derive(extensionKey);
+        }
+        ConcurrentHashMap<String, Namespace> derived = children;
+        if (derived == null) {
+            synchronized (this) {
+                derived = children;
+                if (derived == null) {
+                    derived = new ConcurrentHashMap<>();
+                    children = derived;
+                }
+            }
+        }
+        Namespace namespace = derived.get(extensionKey);
+        if (namespace == null) {
+            namespace = derived.computeIfAbsent(extensionKey, k -> canonicalize(id + SEPARATOR_CHAR + k));
+        }
+        return namespace;
+    }
+
+    /**
+     *
+     * @return The canonical namespace without the last key of this one, or
+     * null for a namespace with a single key
+     */
+    public Namespace getParent() {
+        int index = id.lastIndexOf(SEPARATOR_CHAR);
+        return index < 0 ? null : canonicalize(id.substring(0, index));
+    }
+
+    /**
+     * The namespaces searched by a hierarchical lookup, e. g. a:b:c, a:b and
+     * a for the namespace a:b:c
+     *
+     * @return The canonical instances of this namespace and its ancestors,
+     * nearest first
+     */
+    public List<Namespace> getFallbackChain() {
+        if (!canonical) {
+            return canonical().getFallbackChain();
+        }
+        List<Namespace> chain = fallbackChain;
+        if (chain == null) {
+            List<Namespace> namespaces = new ArrayList<>();
+            for (Namespace namespace = this; namespace != null; namespace = namespace.getParent()) {
+                namespaces.add(namespace);
+            }
+            chain = Collections.unmodifiableList(namespaces);
+            fallbackChain = chain;
         }
-        newKeys[i] = extensionKey;
-        return new Namespace(newKeys);
+        return chain;
     }
 
     /**
@@ -126,6 +243,6 @@ public class Namespace implements Comparable<Namespace>, Serializable {
         if (namespace == null) {
             throw new IllegalArgumentException("namespace may not be null");
         }
-        return this.toString().compareTo(namespace.toString());
+        return namespace == this ? 0 : id.compareTo(namespace.id);
     }
 }
@@ -0,0 +1,506 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PropertyManager which inherits properties from other instances without
+ * copying them. It holds only its own properties and delegates all other
+ * lookups to its base instances; namespaces can be hidden from a base
+ * instance with a namespace mask. Lookups are cached, so they stay cheap even
+ * with long inheritance chains.
+ * <p>
+ * The result is the same as copying all properties of the base instances in
+ * a bulk load (see {@link #PropertyManager(PropertyManager...)}): inherited
+ * values which still contain macros are copied and resolved in the context of
+ * this instance, all others are shared. The base instances are copied once,
+ * so later changes to them do not affect this instance.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class OverlayPropertyManager extends PropertyManager {
+
+    static final long serialVersionUID = 7203311958L;
+    private static final String MISSING = new String("missing");
+
+    //.... The base instances in the order of their precedence; they are never modified
+    private List<Layer> layers;
+    private transient volatile LookupCache lookupCache;
+    private transient OverlayPropertyManager sharedCopy;
+
+    /**
+     *
+     */
+    private static class Layer implements Serializable {
+
+        static final long serialVersionUID = 7203311959L;
+        private final PropertyManager propertyManager;
+        private final Set<String> ignoredNamespaces;
+
+        /**
+         *
+         * @param propertyManager
+         * @param ignoredNamespaces
+         */
+        private Layer(PropertyManager propertyManager, Set<String> ignoredNamespaces) {
+            this.propertyManager = propertyManager;
+            this.ignoredNamespaces = ignoredNamespaces;
+        }
+
+        /**
+         *
+         * @param namespace
+         * @return
+         */
+        private boolean isVisible(Namespace namespace) {
+            return ignoredNamespaces.isEmpty() || PropertyManager.isVisible(namespace, ignoredNamespaces);
+        }
+
+        /**
+         *
+         * @param namespace
+         * @param key
+         * @return
+         */
+        private String getProperty(Namespace namespace, String key) {
+            return isVisible(namespace) ? propertyManager.getProperty(namespace, key) : null;
+        }
+    }
+
+    /**
+     * Cached lookups, valid for one version of this instance
+     */
+    private static class LookupCache {
+
+        private final long version;
+        private final Map<PropertyKey, String> values = new ConcurrentHashMap<>();
+        private final Map<String, Namespace> firstNamespaces = new ConcurrentHashMap<>();
+        private volatile Collection<Namespace> namespaces;
+
+        /**
+         *
+         * @param version
+         */
+        private LookupCache(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Create an instance which inherits properties from the provided instances
+     * (in the order in which they are provided which can be relevant, depending
+     * on the selected overwrite policy)
+     *
+     * @param propertyManagers
+     */
+    public OverlayPropertyManager(PropertyManager... propertyManagers) {
+        if (propertyManagers == null) {
+            throw new IllegalArgumentException("propertyManagers may not be null");
+        }
+        List<Layer> bases = new ArrayList<>();
+        for (PropertyManager propertyManager : propertyManagers) {
+            if (propertyManager == null) {
+                throw new IllegalArgumentException("propertyManagers may not contain null");
+            }
+            bases.add(new Layer(getSharedCopy(propertyManager), Collections.emptySet()));
+        }
+
+        //.... The first write wins if overwrites are avoided, the last one otherwise
+        if (!doesAvoidOverwrites()) {
+            Collections.reverse(bases);
+        }
+        layers = bases;
+        beginBulk();
+        try {
+            inheritUnresolvedProperties();
+        } finally {
+            commitBulk();
+        }
+    }
+
+    /**
+     *
+     * @param layers
+     */
+    private OverlayPropertyManager(List<Layer> layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * Create a named property set for
+     * {@link PropertyManager#createPropertyManagers(org.jdom2.Element)}. The
+     * caller has to add the properties of the set itself and resolve them in
+     * the same bulk load
+     *
+     * @param generalManager Is shared without copying it
+     * @param parentManager The parent set or null
+     * @param ignoredNamespaces The names of the namespaces not to inherit from
+     * the parent set
+     * @return An instance in bulk mode
+     */
+    static OverlayPropertyManager beginPropertySet(PropertyManager generalManager, PropertyManager parentManager, Set<String> ignoredNamespaces) {
+        OverlayPropertyManager overlayManager = new OverlayPropertyManager(new ArrayList<>());
+        overlayManager.layers.add(new Layer(generalManager, Collections.emptySet()));
+        if (parentManager != null) {
+            Layer parentLayer = new Layer(getSharedCopy(parentManager), ignoredNamespaces);
+            overlayManager.layers.add(overlayManager.doesAvoidOverwrites() ? 1 : 0, parentLayer);
+        }
+        overlayManager.beginBulk();
+        overlayManager.inheritUnresolvedProperties();
+        return overlayManager;
+    }
+
+    /**
+     * Copy the inherited properties whose values still contain macros, so that
+     * they are resolved in the context of this instance
+     */
+    private void inheritUnresolvedProperties() {
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            for (PropertyKey propertyKey : layer.propertyManager.getUnresolvedProperties()) {
+                Namespace namespace = propertyKey.getNamespace();
+                String key = propertyKey.getKey();
+                if (!layer.isVisible(namespace) || super.containsProperty(namespace, key) || isShadowed(i, namespace, key)) {
+                    continue;
+                }
+                String value = layer.propertyManager.getProperty(namespace, key);
+                inheritValue(propertyKey, value);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param layerIndex
+     * @param namespace
+     * @param key
+     * @return True if one of the layers with higher precedence has the property
+     */
+    private boolean isShadowed(int layerIndex, Namespace namespace, String key) {
+        for (int i = 0; i < layerIndex; i++) {
+            if (layers.get(i).getProperty(namespace, key) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An unmodifiable view of an instance to be used as base instance
+     *
+     * @param propertyManager
+     * @return
+     */
+    private static PropertyManager getSharedCopy(PropertyManager propertyManager) {
+        if (propertyManager instanceof OverlayPropertyManager) {
+            return ((OverlayPropertyManager) propertyManager).getSharedCopy();
+        }
+        return propertyManager.copy();
+    }
+
+    /**
+     * A copy of this instance which can be shared by all instances deriving
+     * from it as long as this instance is not modified
+     *
+     * @return
+     */
+    private synchronized OverlayPropertyManager getSharedCopy() {
+        if (sharedCopy == null || sharedCopy.getVersion() != getVersion()) {
+            sharedCopy = (OverlayPropertyManager) copy();
+        }
+        return sharedCopy;
+    }
+
+    /**
+     *
+     * @return
+     */
+    private LookupCache getLookupCache() {
+        LookupCache cache = lookupCache;
+        long version = getVersion();
+        if (cache == null || cache.version != version) {
+            cache = new LookupCache(version);
+            lookupCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    private String getInheritedProperty(Namespace namespace, String key) {
+        for (Layer layer : layers) {
+            String value = layer.getProperty(namespace, key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy all inherited properties into this instance and drop the base
+     * instances
+     */
+    private void flatten() {
+        for (Namespace namespace : getNamespaces()) {
+            for (Map.Entry<String, String> entry : getProperties(namespace).entrySet()) {
+                if (!super.containsProperty(namespace, entry.getKey())) {
+                    inheritValue(new PropertyKey(namespace, entry.getKey()), entry.getValue());
+                }
+            }
+        }
+        layers = new ArrayList<>();
+        lookupCache = null;
+    }
+
+    /**
+     * Remove a property from the namespace provided. If the property is
+     * inherited, all inherited properties are copied into this instance first
+     *
+     * @param namespace
+     * @param key
+     */
+    @Override
+    public void removeProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        if (!layers.isEmpty() && getInheritedProperty(namespace, key) != null) {
+            flatten();
+        }
+        super.removeProperty(namespace, key);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    String lookupProperty(Namespace namespace, String key) {
+        LookupCache cache = getLookupCache();
+        PropertyKey propertyKey = new PropertyKey(namespace, key);
+        String value = cache.values.get(propertyKey);
+        if (value == null) {
+            value = super.lookupProperty(namespace, key);
+            if (value == null) {
+                value = getInheritedProperty(namespace, key);
+            }
+            cache.values.put(propertyKey, value == null ? MISSING : value);
+            return value;
+        }
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public boolean containsProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        return lookupProperty(namespace, key) != null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public Collection<Namespace> getNamespaces() {
+        LookupCache cache = getLookupCache();
+        Collection<Namespace> namespaces = cache.namespaces;
+        if (namespaces == null) {
+            Set<Namespace> allNamespaces = new TreeSet<>(super.getNamespaces());
+            for (Layer layer : layers) {
+                for (Namespace namespace : layer.propertyManager.getNamespaces()) {
+                    if (layer.isVisible(namespace)) {
+                        allNamespaces.add(namespace);
+                    }
+                }
+            }
+            namespaces = Collections.unmodifiableSet(allNamespaces);
+            cache.namespaces = namespaces;
+        }
+        return namespaces;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public boolean containsNamespace(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        return getNamespaces().contains(namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return A copy of the properties in the namespace given
+     */
+    @Override
+    public Map<String, String> getProperties(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (!containsNamespace(namespace)) {
+            return new HashMap<>();
+        }
+        Map<String, String> properties = new TreeMap<>();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            if (layers.get(i).isVisible(namespace)) {
+                properties.putAll(layers.get(i).propertyManager.getProperties(namespace));
+            }
+        }
+        properties.putAll(super.getProperties(namespace));
+        return properties;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param prefix
+     * @return A copy of the properties with the prefix given
+     */
+    @Override
+    public Map<String, String> getPropertiesWithPrefix(Namespace namespace, String prefix) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix may not be null");
+        }
+        Map<String, String> properties = new TreeMap<>();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            if (layers.get(i).isVisible(namespace)) {
+                properties.putAll(layers.get(i).propertyManager.getPropertiesWithPrefix(namespace, prefix));
+            }
+        }
+        properties.putAll(super.getPropertiesWithPrefix(namespace, prefix));
+        return properties;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param pattern
+     * @return
+     */
+    @Override
+    public Map<String, String> getPropertiesMatching(Namespace namespace, String pattern) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern may not be null");
+        }
+        Map<String, String> properties = new TreeMap<>();
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            if (layers.get(i).isVisible(namespace)) {
+                properties.putAll(layers.get(i).propertyManager.getPropertiesMatching(namespace, pattern));
+            }
+        }
+        properties.putAll(super.getPropertiesMatching(namespace, pattern));
+        return properties;
+    }
+
+    /**
+     *
+     * @param key
+     * @param ignoredNamespaces
+     * @return
+     */
+    @Override
+    Namespace findFirstNamespace(String key, Set<String> ignoredNamespaces) {
+        LookupCache cache = null;
+        if (ignoredNamespaces.isEmpty()) {
+            cache = getLookupCache();
+            Namespace namespace = cache.firstNamespaces.get(key);
+            if (namespace != null) {
+                return namespace;
+            }
+        }
+        Namespace first = super.findFirstNamespace(key, ignoredNamespaces);
+        for (Layer layer : layers) {
+            Set<String> ignored = layer.ignoredNamespaces;
+            if (!ignoredNamespaces.isEmpty()) {
+                ignored = new HashSet<>(ignoredNamespaces);
+                ignored.addAll(layer.ignoredNamespaces);
+            }
+            Namespace namespace = layer.propertyManager.findFirstNamespace(key, ignored);
+            if (namespace != null && (first == null || namespace.compareTo(first) < 0)) {
+                first = namespace;
+            }
+        }
+        if (cache != null && first != null) {
+            cache.firstNamespaces.put(key, first);
+        }
+        return first;
+    }
+
+    /**
+     * The copy shares the base instances of this instance
+     *
+     * @return
+     */
+    @Override
+    PropertyManager copy() {
+        OverlayPropertyManager copy = new OverlayPropertyManager(new ArrayList<>(layers));
+        copyInto(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The set of modifications applied to a PropertyManager in one batch, grouped
+ * by namespace. A property which has been set (added or modified) is listed
+ * as changed, a property which has been removed as removed.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertyChangeEvent {
+
+    private final PropertyManager source;
+    private final Map<Namespace, Set<String>> changedKeys = new TreeMap<>();
+    private final Map<Namespace, Set<String>> removedKeys = new TreeMap<>();
+
+    /**
+     *
+     * @param source
+     */
+    PropertyChangeEvent(PropertyManager source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        this.source = source;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    void addChanged(Namespace namespace, String key) {
+        changedKeys.computeIfAbsent(namespace, k -> new TreeSet<>()).add(key);
+        Set<String> removed = removedKeys.get(namespace);
+        if (removed != null && removed.remove(key) && removed.isEmpty()) {
+            removedKeys.remove(namespace);
+        }
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    void addRemoved(Namespace namespace, String key) {
+        removedKeys.computeIfAbsent(namespace, k -> new TreeSet<>()).add(key);
+        Set<String> changed = changedKeys.get(namespace);
+        if (changed != null && changed.remove(key) && changed.isEmpty()) {
+            changedKeys.remove(namespace);
+        }
+    }
+
+    /**
+     *
+     * @return The PropertyManager which has been modified
+     */
+    public PropertyManager getSource() {
+        return source;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return changedKeys.isEmpty() && removedKeys.isEmpty();
+    }
+
+    /**
+     *
+     * @return All namespaces with changed or removed properties
+     */
+    public Set<Namespace> getNamespaces() {
+        Set<Namespace> namespaces = new TreeSet<>(changedKeys.keySet());
+        namespaces.addAll(removedKeys.keySet());
+        return namespaces;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The keys of the properties which have been added or modified
+     */
+    public Set<String> getChangedKeys(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        Set<String> keys = changedKeys.get(namespace);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The keys of the properties which have been removed
+     */
+    public Set<String> getRemovedKeys(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        Set<String> keys = removedKeys.get(namespace);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    public boolean containsNamespace(Namespace namespace) {
+        return changedKeys.containsKey(namespace) || removedKeys.containsKey(namespace);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "changed: " + changedKeys + ", removed: " + removedKeys;
+    }
+}
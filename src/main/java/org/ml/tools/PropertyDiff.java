@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The differences between two PropertyManager instances, grouped by
+ * namespace, as computed by {@link PropertyManager#diff(PropertyManager)}.
+ * Within a namespace, the properties are listed in the order of their keys.
+ * Applying the diff to the first instance with
+ * {@link PropertyManager#merge(PropertyDiff)} yields the properties of the
+ * second one.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertyDiff {
+
+    private final Map<Namespace, Map<String, String>> addedProperties = new TreeMap<>();
+    private final Map<Namespace, Map<String, String>> removedProperties = new TreeMap<>();
+    private final Map<Namespace, Map<String, String>> changedProperties = new TreeMap<>();
+    private final Map<Namespace, Map<String, String>> previousValues = new TreeMap<>();
+
+    /**
+     *
+     */
+    PropertyDiff() {
+    }
+
+    /**
+     * The keys have to be added in ascending order
+     *
+     * @param namespace
+     * @param key
+     * @param value
+     */
+    void addAdded(Namespace namespace, String key, String value) {
+        addedProperties.computeIfAbsent(namespace, k -> new LinkedHashMap<>()).put(key, value);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param previousValue
+     */
+    void addRemoved(Namespace namespace, String key, String previousValue) {
+        removedProperties.computeIfAbsent(namespace, k -> new LinkedHashMap<>()).put(key, previousValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param previousValue
+     * @param value
+     */
+    void addChanged(Namespace namespace, String key, String previousValue, String value) {
+        changedProperties.computeIfAbsent(namespace, k -> new LinkedHashMap<>()).put(key, value);
+        previousValues.computeIfAbsent(namespace, k -> new LinkedHashMap<>()).put(key, previousValue);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return addedProperties.isEmpty() && removedProperties.isEmpty() && changedProperties.isEmpty();
+    }
+
+    /**
+     *
+     * @return The total number of added, removed and changed properties
+     */
+    public int size() {
+        return size(addedProperties) + size(removedProperties) + size(changedProperties);
+    }
+
+    /**
+     *
+     * @param properties
+     * @return
+     */
+    private static int size(Map<Namespace, Map<String, String>> properties) {
+        int size = 0;
+        for (Map<String, String> namespaceProperties : properties.values()) {
+            size += namespaceProperties.size();
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @return All namespaces with differences
+     */
+    public Set<Namespace> getNamespaces() {
+        Set<Namespace> namespaces = new TreeSet<>(addedProperties.keySet());
+        namespaces.addAll(removedProperties.keySet());
+        namespaces.addAll(changedProperties.keySet());
+        return namespaces;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    public boolean containsNamespace(Namespace namespace) {
+        return addedProperties.containsKey(namespace) || removedProperties.containsKey(namespace) || changedProperties.containsKey(namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The properties which only exist in the second instance, with
+     * their values
+     */
+    public Map<String, String> getAddedProperties(Namespace namespace) {
+        return getProperties(addedProperties, namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The properties which only exist in the first instance, with
+     * their values
+     */
+    public Map<String, String> getRemovedProperties(Namespace namespace) {
+        return getProperties(removedProperties, namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The properties with different values, with their values in the
+     * second instance
+     */
+    public Map<String, String> getChangedProperties(Namespace namespace) {
+        return getProperties(changedProperties, namespace);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The properties with different values, with their values in the
+     * first instance
+     */
+    public Map<String, String> getPreviousValues(Namespace namespace) {
+        return getProperties(previousValues, namespace);
+    }
+
+    /**
+     *
+     * @param properties
+     * @param namespace
+     * @return
+     */
+    private static Map<String, String> getProperties(Map<Namespace, Map<String, String>> properties, Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        Map<String, String> namespaceProperties = properties.get(namespace);
+        return namespaceProperties == null ? Collections.emptyMap() : Collections.unmodifiableMap(namespaceProperties);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return "added: " + addedProperties + ", removed: " + removedProperties + ", changed: " + changedProperties;
+    }
+}
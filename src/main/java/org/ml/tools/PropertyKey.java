@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.Serializable;
+
+/**
+ * The location of a single property, i. e. the combination of a namespace and
+ * a key. This is used internally to index properties across namespaces
+ *
+ * @author Dr. Matthias Laux
+ */
+final class PropertyKey implements Comparable<PropertyKey>, Serializable {
+
+    static final long serialVersionUID = 2206987321L;
+    private final Namespace namespace;
+    private final String key;
+    private final int hashCode;
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    PropertyKey(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        this.namespace = namespace;
+        this.key = key;
+        hashCode = 31 * namespace.hashCode() + key.hashCode();
+    }
+
+    /**
+     *
+     * @return
+     */
+    Namespace getNamespace() {
+        return namespace;
+    }
+
+    /**
+     *
+     * @return
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     *
+     * @param object
+     * @return
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
+        if (!(object instanceof PropertyKey)) {
+            return false;
+        }
+        PropertyKey propertyKey = (PropertyKey) object;
+        return hashCode == propertyKey.hashCode && key.equals(propertyKey.key) && namespace.equals(propertyKey.namespace);
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @return
+     */
+    @Override
+    public int compareTo(PropertyKey propertyKey) {
+        if (propertyKey == null) {
+            throw new IllegalArgumentException("propertyKey may not be null");
+        }
+        int c = namespace.compareTo(propertyKey.namespace);
+        if (c != 0) {
+            return c;
+        }
+        return key.compareTo(propertyKey.key);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        if (namespace.equals(PropertyManager.DEFAULT_NAMESPACE)) {
+            return key;
+        } else {
+            return namespace + "/" + key;
+        }
+    }
+}
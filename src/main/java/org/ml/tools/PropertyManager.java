@@ -24,10 +24,18 @@
 package org.ml.tools;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import org.jdom2.Element;
+import org.ml.tools.logging.LoggerFactory;
 
 /**
  *
@@ -36,17 +44,69 @@ import org.jdom2.Element;
 public class PropertyManager implements Serializable {
 
     static final long serialVersionUID = 0427567567L;
+    private final static Logger LOGGER = LoggerFactory.getLogger(PropertyManager.class.getName());
     public final static ResolutionPolicy DEFAULT_RESOLUTION_POLICY = ResolutionPolicy.ALL_NAMESPACES;
-    public final static Namespace DEFAULT_NAMESPACE = new Namespace("default_namespace_do_not_use_elsewhere ##$$%%");
+    public final static Namespace DEFAULT_NAMESPACE = Namespace.of("default_namespace_do_not_use_elsewhere ##$$%%");
     public final static String DEFAULT_MACRO_PATTERN = "##(.+?)##";
+    public final static char KEY_SEPARATOR = '.';
 
     private static boolean DEFAULT_AVOID_OVERWRITES = false;
 
+    private static final TypedValueCache.Parser INT_PARSER = Integer::valueOf;
+    private static final TypedValueCache.Parser LONG_PARSER = Long::valueOf;
+    private static final TypedValueCache.Parser DOUBLE_PARSER = Double::valueOf;
+    private static final TypedValueCache.Parser BOOLEAN_PARSER = PropertyManager::parseBoolean;
+    private static final TypedValueCache.Parser DURATION_PARSER = PropertyManager::parseDuration;
+    private static final TypedValueCache.Parser LIST_PARSER = value -> Collections.unmodifiableList(ToolBelt.extractList(value));
+    private static final TypedValueCache.Parser MAP_PARSER = value -> Collections.unmodifiableMap(ToolBelt.extractMap(value));
+
     private ResolutionPolicy resolutionPolicy = DEFAULT_RESOLUTION_POLICY;
+    private LookupPolicy lookupPolicy = LookupPolicy.EXACT;
     private final Map<Namespace, Map<String, String>> namespaceData = new TreeMap<>();
     private boolean avoidOverwrites = DEFAULT_AVOID_OVERWRITES;
     private boolean resolveMacros = true;
-    private static Matcher macroMatcher = Pattern.compile(DEFAULT_MACRO_PATTERN).matcher("");
+    private boolean lazyResolution = false;
+    private Pattern macroPattern = Pattern.compile(DEFAULT_MACRO_PATTERN);
+
+    //.... Dependency index for macros which could not be resolved yet: the compiled template of a property, which
+    //     yields the keys it references (forward), and which properties reference a given key (reverse). This is
+    //     rebuilt on demand after deserialization
+    private transient Map<PropertyKey, MacroTemplate> macroTemplates = new HashMap<>();
+    private transient Map<String, Set<PropertyKey>> macroDependents = new HashMap<>();
+    private transient boolean macroIndexValid = true;
+    private transient MacroTemplate.Syntax macroSyntax;
+
+    //.... The namespaces containing a given key, in the order in which ALL_NAMESPACES looks for macro targets
+    private transient Map<String, TreeSet<Namespace>> keyNamespaces = new HashMap<>();
+
+    //.... Index of the key segments for wildcard queries, per namespace; only present after the first query
+    private transient volatile Map<Namespace, KeyTrie> keyTries = null;
+
+    //.... Incremented with every modification of a value; the namespaces keep the version of their last modification
+    private transient long version = 0;
+    private transient Map<Namespace, Long> namespaceVersions = new HashMap<>();
+
+    //.... Change listeners and the modifications collected for their next notification
+    private transient CopyOnWriteArrayList<IPropertyChangeListener> propertyChangeListeners;
+    private transient PropertyChangeEvent pendingEvent;
+    private transient boolean collectingChanges = false;
+
+    //.... Parsed values for the typed getters
+    private transient TypedValueCache typedValueCache = new TypedValueCache();
+
+    //.... Lazy resolution: resolved values memoized on first read, invalidated through the macro index
+    private transient Map<PropertyKey, String> resolvedValues = new ConcurrentHashMap<>();
+
+    //.... Hierarchical lookups: the namespace in which a property has been found, only present after the first lookup
+    private transient volatile LocationCache locationCache = null;
+
+    //.... Access statistics, only recorded when enabled
+    private transient volatile PropertyStatistics statistics = null;
+
+    //.... Bulk mode: values are stored without resolving macros until the outermost commitBulk()
+    private transient int bulkDepth = 0;
+    private transient Set<String> bulkChangedKeys;
+    private transient Set<PropertyKey> bulkPendingProperties;
 
     /**
      *
@@ -57,11 +117,47 @@ public class PropertyManager implements Serializable {
     }
 
     /**
-     *
+     * WITHIN_NAMESPACE and ALL_NAMESPACES resolve macros when a value is set.
+     * The LAZY variants use the same lookup rules, but store the raw values and
+     * resolve the macros only when a value is read. The resolved values are
+     * memoized until one of the properties they refer to changes; they are the
+     * same as the values of a bulk load with eager resolution, but a value
+     * set later on is also seen by all properties referring to it
      */
     public enum ResolutionPolicy {
 
-        WITHIN_NAMESPACE, ALL_NAMESPACES, NONE
+        WITHIN_NAMESPACE, ALL_NAMESPACES, NONE, LAZY_WITHIN_NAMESPACE, LAZY_ALL_NAMESPACES
+    }
+
+    /**
+     * EXACT reads a property only from the namespace requested. HIERARCHICAL
+     * falls back to the ancestors of the namespace (see
+     * {@link Namespace#getFallbackChain()}), so a:b:c inherits the properties
+     * of a:b and a. The namespace in which a property has been found is cached
+     * until a property with that key is added or removed
+     */
+    public enum LookupPolicy {
+
+        EXACT, HIERARCHICAL
+    }
+
+    /**
+     * The locations found by hierarchical lookups, by key and requested
+     * namespace, valid for one version of the instance
+     */
+    private static class LocationCache {
+
+        private static final Object NO_LOCATION = new Object();
+        private volatile long version;
+        private final Map<String, Map<Namespace, Object>> locations = new ConcurrentHashMap<>();
+
+        /**
+         *
+         * @param version
+         */
+        private LocationCache(long version) {
+            this.version = version;
+        }
     }
 
     /**
@@ -185,10 +281,13 @@ public class PropertyManager implements Serializable {
         if (propertyManagers == null) {
             throw new IllegalArgumentException("propertyManagers may not be null");
         }
-        for (PropertyManager propertyManager : propertyManagers) {
-            for (Namespace namespace : propertyManager.getNamespaces()) {
-                setProperties(namespace, propertyManager.getProperties(namespace));
+        beginBulk();
+        try {
+            for (PropertyManager propertyManager : propertyManagers) {
+                setProperties(propertyManager);
             }
+        } finally {
+            commitBulk();
         }
     }
 
@@ -225,45 +324,11 @@ public class PropertyManager implements Serializable {
 
                 if (propertySetElement.getAttribute(XML.name.toString()) != null) {
 
-                    PropertyManager namedManager;
-
-                    //.... A derived property set, i. e. this property manager inherits properties from a parent
-                    if (propertySetElement.getAttribute(XML.parent.toString()) != null) {
-                        String parentName = propertySetElement.getAttributeValue(XML.parent.toString());
-                        if (!propertyManagers.containsKey(parentName)) {
-                            throw new UnsupportedOperationException("Unknown parent PropertySet referenced: " + parentName);
-                        }
-
-                        //.... Do we need to ignore certain namespaces when crrating the derived PropertyManager?
-                        if (propertySetElement.getAttribute(XML.ignoreNamespace.toString()) != null) {
-
-                            //.... Get the names of the namespaces to ignore when creating the new named manager
-                            String[] ns = propertySetElement.getAttributeValue(XML.ignoreNamespace.toString()).split(":");
-                            Set<String> nset = new HashSet<>();
-                            Collections.addAll(nset, ns);
-                            PropertyManager parentPropertyManager = propertyManagers.get(parentName);
-                            namedManager = new PropertyManager(generalManager);
-
-                            //.... Copy over the default namespace (it can not be ignored)
-                            namedManager.setProperties(DEFAULT_NAMESPACE, parentPropertyManager.getProperties(DEFAULT_NAMESPACE));
-
-                            //.... Copy over the other namespaces unless their name is part of the ignore set
-                            for (Namespace namespace : parentPropertyManager.getNamespaces()) {
-                                if (!nset.contains(namespace.toString())) {
-                                    namedManager.setProperties(namespace, parentPropertyManager.getProperties(namespace));
-                                }
-                            }
-
-                            //.... No namespaces to ignore
-                        } else {
-                            namedManager = new PropertyManager(generalManager, propertyManagers.get(parentName));
-                        }
-
-                        //.... No parent to inherit from
-                    } else {
-                        namedManager = new PropertyManager(generalManager);
-                    }
-                    namedManager.setProperties(propertySetElement);
+                    //.... Everything for this manager is loaded in bulk so that macros are resolved only once
+                    PropertyManager namedManager = createNamedPropertyManager(propertyManagers, generalManager,
+                            propertySetElement.getAttributeValue(XML.parent.toString()),
+                            propertySetElement.getAttributeValue(XML.ignoreNamespace.toString()),
+                            manager -> manager.setProperties(propertySetElement));
                     String name = propertySetElement.getAttributeValue(XML.name.toString()).trim();
                     propertyManagers.put(name, namedManager);
                 }
@@ -275,6 +340,49 @@ public class PropertyManager implements Serializable {
         return propertyManagers;
     }
 
+    /**
+     * Assemble a named property set: the general properties come first, then
+     * the properties inherited from the parent set (if any) and finally the
+     * properties of the set itself. The set is an overlay sharing the
+     * properties of the general and the parent set instead of copying them.
+     * Everything is loaded in one bulk so that macros are resolved only once,
+     * against the values of the set after its own properties have been applied
+     *
+     * @param propertyManagers The named property sets created so far
+     * @param generalManager
+     * @param parentName The name of the parent set or null
+     * @param ignoreNamespace The colon-separated names of the namespaces not
+     * to inherit from the parent set or null
+     * @param ownProperties Adds the properties of the set itself
+     * @return
+     */
+    static PropertyManager createNamedPropertyManager(Map<String, PropertyManager> propertyManagers, PropertyManager generalManager,
+            String parentName, String ignoreNamespace, Consumer<PropertyManager> ownProperties) {
+
+        //.... A derived property set, i. e. this property manager inherits properties from a parent
+        PropertyManager parentPropertyManager = null;
+        Set<String> nset = Collections.emptySet();
+        if (parentName != null) {
+            if (!propertyManagers.containsKey(parentName)) {
+                throw new UnsupportedOperationException("Unknown parent PropertySet referenced: " + parentName);
+            }
+            parentPropertyManager = propertyManagers.get(parentName);
+
+            //.... Do we need to ignore certain namespaces when crrating the derived PropertyManager? The default namespace can not be ignored
+            if (ignoreNamespace != null) {
+                nset = new HashSet<>();
+                Collections.addAll(nset, ignoreNamespace.split(":"));
+            }
+        }
+        PropertyManager namedManager = OverlayPropertyManager.beginPropertySet(generalManager, parentPropertyManager, nset);
+        try {
+            ownProperties.accept(namedManager);
+        } finally {
+            namedManager.commitBulk();
+        }
+        return namedManager;
+    }
+
     /**
      *
      * @param avoidOverwrites
@@ -291,8 +399,20 @@ public class PropertyManager implements Serializable {
         if (resolutionPolicy == null) {
             throw new IllegalArgumentException("resolutionPolicy may not be null");
         }
+        boolean wasLazy = lazyResolution;
         this.resolutionPolicy = resolutionPolicy;
         resolveMacros = resolutionPolicy != ResolutionPolicy.NONE;
+        lazyResolution = resolutionPolicy == ResolutionPolicy.LAZY_WITHIN_NAMESPACE || resolutionPolicy == ResolutionPolicy.LAZY_ALL_NAMESPACES;
+        macroIndexValid = false;
+        clearResolvedValues();
+        if (lazyResolution) {
+            rebuildMacroIndex();
+        } else if (wasLazy && resolveMacros) {
+
+            //.... The stored values are still raw, so resolve all of them now
+            backwardResolveMacros(Collections.emptySet());
+            firePropertyChange();
+        }
     }
 
     /**
@@ -304,6 +424,30 @@ public class PropertyManager implements Serializable {
     }
 
     /**
+     * Select how {@link #getProperty(Namespace, String)} and the typed getters
+     * find properties, see {@link LookupPolicy}
+     *
+     * @param lookupPolicy
+     */
+    public void setLookupPolicy(LookupPolicy lookupPolicy) {
+        if (lookupPolicy == null) {
+            throw new IllegalArgumentException("lookupPolicy may not be null");
+        }
+        this.lookupPolicy = lookupPolicy;
+        getTypedValueCache().clear();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public LookupPolicy getLookupPolicy() {
+        return lookupPolicy;
+    }
+
+    /**
+     * Set the pattern used to detect macros in the values of this instance.
+     * The first capturing group of the pattern has to yield the referenced key
      *
      * @param patternString
      */
@@ -311,7 +455,20 @@ public class PropertyManager implements Serializable {
         if (patternString == null) {
             throw new IllegalArgumentException("patternString may not be null");
         }
-        macroMatcher = Pattern.compile(patternString).matcher("");
+        macroPattern = Pattern.compile(patternString);
+        macroIndexValid = false;
+        clearResolvedValues();
+        if (lazyResolution) {
+            rebuildMacroIndex();
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getMacroPattern() {
+        return macroPattern.pattern();
     }
 
     /**
@@ -322,6 +479,52 @@ public class PropertyManager implements Serializable {
         this.avoidOverwrites = avoidOverwrites;
     }
 
+    /**
+     * Start a bulk load. Until the matching {@link #commitBulk()}, properties
+     * are stored with their raw values and macros are not resolved (so
+     * {@link #getProperty(Namespace, String)} returns the raw values in the
+     * meantime). Bulk loads can be nested; only the outermost commit resolves
+     * the macros
+     */
+    public void beginBulk() {
+        if (bulkDepth++ == 0) {
+            bulkChangedKeys = new HashSet<>();
+            bulkPendingProperties = new HashSet<>();
+        }
+    }
+
+    /**
+     * Finish a bulk load started with {@link #beginBulk()}. The outermost
+     * commit resolves all macros affected by the bulk load in one pass, in
+     * topological order of their references. Since this happens after all the
+     * values have been stored, macros are resolved against the final values of
+     * the bulk load, i. e. a key which is set more than once is referenced
+     * with its last value. Properties which are part of a circular reference
+     * are left unresolved, just as with {@link #setProperty(Namespace, String, String)},
+     * and so are the properties referencing them; the chains of keys involved
+     * are logged
+     */
+    public void commitBulk() {
+        if (bulkDepth == 0) {
+            throw new IllegalStateException("commitBulk() called without matching beginBulk()");
+        }
+        if (--bulkDepth > 0) {
+            return;
+        }
+        Set<String> changedKeys = bulkChangedKeys;
+        Set<PropertyKey> pendingProperties = bulkPendingProperties;
+        bulkChangedKeys = null;
+        bulkPendingProperties = null;
+        if (resolveMacros && !lazyResolution && !changedKeys.isEmpty()) {
+            List<String> cycles = new ArrayList<>();
+            backwardResolveMacros(changedKeys, pendingProperties, cycles);
+            for (String cycle : cycles) {
+                LOGGER.log(Level.WARNING, "Circular macro reference left unresolved: {0}", cycle);
+            }
+        }
+        firePropertyChange();
+    }
+
     /**
      * Return a collection of all namespaces which are actually used for
      * properties
@@ -399,18 +602,99 @@ public class PropertyManager implements Serializable {
         if (value == null) {
             throw new IllegalArgumentException("value may not be null");
         }
-        if (avoidOverwrites && namespaceData.containsKey(namespace) && namespaceData.get(namespace).containsKey(key)) {
+        if (avoidOverwrites && containsProperty(namespace, key)) {
             return;
         }
         if (!namespaceData.containsKey(namespace)) {
             namespaceData.put(namespace, new TreeMap<>());
         }
         if (!resolveMacros) {
-            namespaceData.get(namespace).put(key, value);
+            putValue(new PropertyKey(namespace, key), value, true);
+        } else if (lazyResolution || bulkDepth > 0) {
+            PropertyKey propertyKey = new PropertyKey(namespace, key);
+            MacroTemplate template = compileMacros(value);
+
+            //.... A property which extends its own previous value has to see that value, not itself
+            if (template != null && template.getReferences().contains(key) && namespaceData.get(namespace).containsKey(key)) {
+                value = resolveMacros(propertyKey, value, template).getValue();
+                template = compileMacros(value);
+            }
+            storeRawValue(propertyKey, value, template, true);
         } else {
-            namespaceData.get(namespace).put(key, resolveMacros(namespace, value).getValue());
-            backwardResolveMacros();  // Resolve backward references
+            PropertyKey propertyKey = new PropertyKey(namespace, key);
+            ResolutionResult resolutionResult = resolveMacros(propertyKey, value, compileMacros(value));
+            storeValue(propertyKey, resolutionResult.getValue(), resolutionResult.foundReplacement() ? compileMacros(resolutionResult.getValue()) : null);
+            backwardResolveMacros(Collections.singleton(key));  // Resolve backward references
+        }
+        firePropertyChange();
+    }
+
+    /**
+     * Remove a property from the default namespace
+     *
+     * @param key
+     */
+    public void removeProperty(String key) {
+        removeProperty(DEFAULT_NAMESPACE, key);
+    }
+
+    /**
+     *
+     * @param key
+     */
+    public void removeProperty(Enum key) {
+        removeProperty(DEFAULT_NAMESPACE, key.toString());
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    public void removeProperty(Namespace namespace, Enum key) {
+        removeProperty(namespace, key.toString());
+    }
+
+    /**
+     * Remove a property from the namespace provided. Values which have already
+     * been resolved using the value of this property are not affected
+     *
+     * @param namespace
+     * @param key
+     */
+    public void removeProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
         }
+        Map<String, String> properties = namespaceData.get(namespace);
+        if (properties == null || !properties.containsKey(key)) {
+            return;
+        }
+        PropertyKey propertyKey = new PropertyKey(namespace, key);
+        properties.remove(key);
+        if (properties.isEmpty()) {
+            namespaceData.remove(namespace);
+        }
+        TreeSet<Namespace> owners = getKeyNamespaces().get(key);
+        owners.remove(namespace);
+        if (owners.isEmpty()) {
+            keyNamespaces.remove(key);
+        }
+        updateKeyTrie(propertyKey, false);
+        getTypedValueCache().invalidate(propertyKey);
+        long previousVersion = locationCache == null ? 0 : getVersion();
+        recordChange(propertyKey, true, true);
+        updateLocationCache(key, previousVersion, true);
+        if (macroIndexValid) {
+            updateMacroIndex(propertyKey, null);
+        }
+        if (bulkDepth > 0) {
+            bulkPendingProperties.remove(propertyKey);
+        }
+        firePropertyChange();
     }
 
     /**
@@ -436,6 +720,8 @@ public class PropertyManager implements Serializable {
      * an attribute to a &lt;property&gt; element below the &lt;properties&gt;
      * element
      * </ol>
+     * The properties are loaded in one bulk, so macros are resolved against
+     * the final values (see {@link #commitBulk()})
      *
      * @param namespace
      * @param element
@@ -448,39 +734,44 @@ public class PropertyManager implements Serializable {
             throw new IllegalArgumentException("element may not be null");
         }
 
-        Element propertiesElement = element.getChild(XML.properties.toString());
-        if (propertiesElement != null) {
+        beginBulk();
+        try {
+            Element propertiesElement = element.getChild(XML.properties.toString());
+            if (propertiesElement != null) {
 
-            //.... Check if there is a namespace attribute at the properties level
-            Namespace topNamespace = null;
-            if (propertiesElement.getAttribute(XML.namespace.toString()) != null) {
-                topNamespace = new Namespace(propertiesElement.getAttributeValue(XML.namespace.toString()));
-            }
+                //.... Check if there is a namespace attribute at the properties level
+                Namespace topNamespace = null;
+                if (propertiesElement.getAttribute(XML.namespace.toString()) != null) {
+                    topNamespace = Namespace.of(propertiesElement.getAttributeValue(XML.namespace.toString()));
+                }
 
-            //.... Now check all children
-            for (Element propertyElement : propertiesElement.getChildren(XML.property.toString())) {
+                //.... Now check all children
+                for (Element propertyElement : propertiesElement.getChildren(XML.property.toString())) {
 
-                //.... Check if a name has been specified
-                if (propertyElement.getAttribute(XML.name.toString()) == null) {
-                    throw new IllegalArgumentException("Missing property attribute: " + XML.name.toString());
-                }
+                    //.... Check if a name has been specified
+                    if (propertyElement.getAttribute(XML.name.toString()) == null) {
+                        throw new IllegalArgumentException("Missing property attribute: " + XML.name.toString());
+                    }
 
-                //.... First choice: if a namespace was given as argument, take that one
-                Namespace actualNamespace = namespace;
+                    //.... First choice: if a namespace was given as argument, take that one
+                    Namespace actualNamespace = namespace;
 
-                //.... Second approach: if there is an explicit namespace at the properties element level, take that one
-                if (topNamespace != null) {
-                    actualNamespace = topNamespace;
-                }
+                    //.... Second approach: if there is an explicit namespace at the properties element level, take that one
+                    if (topNamespace != null) {
+                        actualNamespace = topNamespace;
+                    }
 
-                //.... Third approach: do we have an explicit namespace for this particular property? This overrides everything else
-                if (propertyElement.getAttribute(XML.namespace.toString()) != null) {
-                    actualNamespace = new Namespace(propertyElement.getAttributeValue(XML.namespace.toString()));
-                }
+                    //.... Third approach: do we have an explicit namespace for this particular property? This overrides everything else
+                    if (propertyElement.getAttribute(XML.namespace.toString()) != null) {
+                        actualNamespace = Namespace.of(propertyElement.getAttributeValue(XML.namespace.toString()));
+                    }
 
-                //.... Now finally set the property in the correct namespace
-                setProperty(actualNamespace, propertyElement.getAttributeValue(XML.name.toString()), propertyElement.getTextTrim());
+                    //.... Now finally set the property in the correct namespace
+                    setProperty(actualNamespace, propertyElement.getAttributeValue(XML.name.toString()), propertyElement.getTextTrim());
+                }
             }
+        } finally {
+            commitBulk();
         }
     }
 
@@ -506,8 +797,13 @@ public class PropertyManager implements Serializable {
         if (properties == null) {
             throw new IllegalArgumentException("properties may not be null");
         }
-        for (String key : properties.keySet()) {
-            setProperty(namespace, key, properties.get(key));
+        beginBulk();
+        try {
+            for (String key : properties.keySet()) {
+                setProperty(namespace, key, properties.get(key));
+            }
+        } finally {
+            commitBulk();
         }
     }
 
@@ -521,11 +817,104 @@ public class PropertyManager implements Serializable {
         if (propertyManager == null) {
             throw new NullPointerException("propertyManager may not be null");
         }
-        for (Namespace namespace : propertyManager.getNamespaces()) {
-            setProperties(namespace, propertyManager.getProperties(namespace));
+        beginBulk();
+        try {
+            for (Namespace namespace : propertyManager.getNamespaces()) {
+                setProperties(namespace, propertyManager.getProperties(namespace));
+            }
+        } finally {
+            commitBulk();
+        }
+    }
+
+    /**
+     * Compare the (resolved) properties of this instance with those of the
+     * instance provided. The properties of each namespace are compared in one
+     * pass over both sorted key sets, so the effort is linear in the number of
+     * properties
+     *
+     * @param propertyManager
+     * @return The differences, with this instance as the first and the
+     * provided one as the second instance
+     */
+    public PropertyDiff diff(PropertyManager propertyManager) {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        PropertyDiff diff = new PropertyDiff();
+        Set<Namespace> namespaces = new TreeSet<>(getNamespaces());
+        namespaces.addAll(propertyManager.getNamespaces());
+        for (Namespace namespace : namespaces) {
+            Iterator<Map.Entry<String, String>> oldEntries = getSortedProperties(namespace).entrySet().iterator();
+            Iterator<Map.Entry<String, String>> newEntries = propertyManager.getSortedProperties(namespace).entrySet().iterator();
+            Map.Entry<String, String> oldEntry = oldEntries.hasNext() ? oldEntries.next() : null;
+            Map.Entry<String, String> newEntry = newEntries.hasNext() ? newEntries.next() : null;
+            while (oldEntry != null || newEntry != null) {
+                int comparison = oldEntry == null ? 1 : newEntry == null ? -1 : oldEntry.getKey().compareTo(newEntry.getKey());
+                if (comparison < 0) {
+                    diff.addRemoved(namespace, oldEntry.getKey(), oldEntry.getValue());
+                } else if (comparison > 0) {
+                    diff.addAdded(namespace, newEntry.getKey(), newEntry.getValue());
+                } else if (!oldEntry.getValue().equals(newEntry.getValue())) {
+                    diff.addChanged(namespace, oldEntry.getKey(), oldEntry.getValue(), newEntry.getValue());
+                }
+                if (comparison <= 0) {
+                    oldEntry = oldEntries.hasNext() ? oldEntries.next() : null;
+                }
+                if (comparison >= 0) {
+                    newEntry = newEntries.hasNext() ? newEntries.next() : null;
+                }
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Apply a diff computed with {@link #diff(PropertyManager)} in one bulk
+     * load: the removed properties are removed, the added and changed ones
+     * are set (overriding existing values, also if overwrites are avoided).
+     * Macros are resolved once at the end and listeners receive one event
+     *
+     * @param diff
+     */
+    public void merge(PropertyDiff diff) {
+        if (diff == null) {
+            throw new IllegalArgumentException("diff may not be null");
+        }
+        beginBulk();
+        try {
+            for (Namespace namespace : diff.getNamespaces()) {
+                for (String key : diff.getRemovedProperties(namespace).keySet()) {
+                    removeProperty(namespace, key);
+                }
+                for (Map.Entry<String, String> entry : diff.getAddedProperties(namespace).entrySet()) {
+                    setProperty(namespace, entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<String, String> entry : diff.getChangedProperties(namespace).entrySet()) {
+                    if (doesAvoidOverwrites()) {
+                        removeProperty(namespace, entry.getKey());
+                    }
+                    setProperty(namespace, entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            commitBulk();
         }
     }
 
+    /**
+     * Subclasses whose {@link #getProperties(Namespace)} is not a SortedMap,
+     * but iterates in the order of the keys anyway, override this to avoid the
+     * copy
+     *
+     * @param namespace
+     * @return The properties of the namespace in the order of their keys
+     */
+    Map<String, String> getSortedProperties(Namespace namespace) {
+        Map<String, String> properties = getProperties(namespace);
+        return properties instanceof SortedMap ? properties : new TreeMap<>(properties);
+    }
+
     /**
      * Get a property in the default namespace
      *
@@ -569,10 +958,94 @@ public class PropertyManager implements Serializable {
         if (key == null) {
             throw new IllegalArgumentException("key may not be null");
         }
-        if (!containsProperty(namespace, key)) {
+        String value;
+        if (lookupPolicy == LookupPolicy.EXACT) {
+            value = lookupProperty(namespace, key);
+        } else {
+            Namespace location = locateProperty(namespace, key);
+            value = location == null ? null : lookupProperty(location, key);
+        }
+        PropertyStatistics propertyStatistics = statistics;
+        if (propertyStatistics != null) {
+            propertyStatistics.recordRead(namespace, key, value != null);
+        }
+        return value;
+    }
+
+    /**
+     * Find the first namespace of the fallback chain of the given namespace
+     * which contains the property
+     *
+     * @param namespace
+     * @param key
+     * @return The namespace or null if none of them contains the property
+     */
+    Namespace locateProperty(Namespace namespace, String key) {
+        LocationCache cache = locationCache;
+        long currentVersion = getVersion();
+        if (cache == null || cache.version != currentVersion) {
+            cache = new LocationCache(currentVersion);
+            locationCache = cache;
+        }
+        Map<Namespace, Object> keyLocations = cache.locations.get(key);
+        if (keyLocations == null) {
+            keyLocations = cache.locations.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        Object location = keyLocations.get(namespace);
+        if (location == null) {
+            location = LocationCache.NO_LOCATION;
+            for (Namespace candidate : namespace.getFallbackChain()) {
+                if (lookupProperty(candidate, key) != null) {
+                    location = candidate;
+                    break;
+                }
+            }
+            keyLocations.put(namespace, location);
+        }
+        return location == LocationCache.NO_LOCATION ? null : (Namespace) location;
+    }
+
+    /**
+     * Keep the cached locations valid after a modification of this instance:
+     * only the locations of a key which has been added or removed can change
+     *
+     * @param key
+     * @param previousVersion The version before the modification
+     * @param keyChanged True if the key has been added or removed
+     */
+    private void updateLocationCache(String key, long previousVersion, boolean keyChanged) {
+        LocationCache cache = locationCache;
+        if (cache == null) {
+            return;
+        }
+        if (cache.version != previousVersion) {
+            locationCache = null;
+            return;
+        }
+        if (keyChanged) {
+            cache.locations.remove(key);
+        }
+        cache.version = getVersion();
+    }
+
+    /**
+     * Get the value of a property without recording the access. Subclasses
+     * with a different storage of the values override this
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    String lookupProperty(Namespace namespace, String key) {
+        Map<String, String> properties = namespaceData.get(namespace);
+        if (properties == null) {
             return null;
         }
-        return namespaceData.get(namespace).get(key);
+        String value = properties.get(key);
+        if (value == null || !lazyResolution) {
+            return value;
+        }
+        return resolveLazily(new PropertyKey(namespace, key), value);
     }
 
     /**
@@ -587,20 +1060,12 @@ public class PropertyManager implements Serializable {
      * @return
      */
     public int getInt(Namespace namespace, String key, int defaultValue) {
-        if (namespace == null) {
-            throw new NullPointerException("namespace may not be null");
-        }
-        if (key == null) {
-            throw new NullPointerException("key may not be null");
-        }
-        if (!containsProperty(namespace, key)) {
-            return defaultValue;
-        }
-        try {
-            return Integer.parseInt(getProperty(namespace, key));
-        } catch (NumberFormatException ex) {
-            return defaultValue;
+        Object value = getTypedValue(namespace, key, INT_PARSER, INT_PARSER);
+        if (value instanceof Integer) {
+            return (Integer) value;
         }
+        recordDefault(namespace, key);
+        return defaultValue;
     }
 
     /**
@@ -648,10 +1113,12 @@ public class PropertyManager implements Serializable {
         if (key == null) {
             throw new NullPointerException("key may not be null");
         }
-        if (!containsProperty(namespace, key)) {
+        String value = getProperty(namespace, key);
+        if (value == null) {
+            recordDefault(namespace, key);
             return defaultValue;
         }
-        return getProperty(namespace, key);
+        return value;
     }
 
     /**
@@ -686,296 +1153,1762 @@ public class PropertyManager implements Serializable {
     }
 
     /**
-     * Check if the property exists in the default namespace
+     * Get the value of a property parsed into some type. Each property is
+     * parsed at most once per type; the result (including the fact that the
+     * property is missing or can not be parsed) is cached until the value of
+     * the property changes
      *
+     * @param namespace
      * @param key
-     * @return
+     * @param type A token identifying the target type
+     * @param parser
+     * @return The parsed value or {@link TypedValueCache#MISSING} or
+     * {@link TypedValueCache#INVALID}
      */
-    public boolean containsProperty(String key) {
-        return containsProperty(DEFAULT_NAMESPACE, key);
+    Object getTypedValue(Namespace namespace, String key, Object type, TypedValueCache.Parser parser) {
+        if (namespace == null) {
+            throw new NullPointerException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new NullPointerException("key may not be null");
+        }
+        if (lookupPolicy == LookupPolicy.HIERARCHICAL) {
+
+            //.... The parsed value is cached for the namespace which actually contains the property
+            Namespace location = locateProperty(namespace, key);
+            if (location == null) {
+                PropertyStatistics propertyStatistics = statistics;
+                if (propertyStatistics != null) {
+                    propertyStatistics.recordRead(namespace, key, false);
+                }
+                return TypedValueCache.MISSING;
+            }
+            namespace = location;
+        }
+        PropertyKey propertyKey = new PropertyKey(namespace, key);
+        TypedValueCache cache = getTypedValueCache();
+        Object value = cache.get(propertyKey, type);
+        PropertyStatistics propertyStatistics = statistics;
+        if (value == null) {
+            value = cache.parse(propertyKey, type, getProperty(namespace, key), parser);
+        } else if (propertyStatistics != null) {
+            propertyStatistics.recordRead(namespace, key, value != TypedValueCache.MISSING);
+        }
+        if (value == TypedValueCache.INVALID && propertyStatistics != null) {
+            propertyStatistics.recordParseFailure(namespace, key);
+        }
+        return value;
     }
 
     /**
      *
-     * @param key
+     * @param value
      * @return
      */
-    public boolean containsProperty(Enum key) {
-        return containsProperty(DEFAULT_NAMESPACE, key.toString());
+    private static Boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        } else if (value.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        } else {
+            throw new IllegalArgumentException("Not a boolean: " + value);
+        }
     }
 
     /**
+     * A duration is either given in ISO-8601 format (e. g. PT15M) or as a
+     * plain number of milliseconds
      *
-     * @param key
+     * @param value
      * @return
      */
-    public boolean containsNonEmptyProperty(String key) {
-        return containsNonEmptyProperty(DEFAULT_NAMESPACE, key);
+    private static Duration parseDuration(String value) {
+        if (value.length() > 0 && (value.charAt(0) == 'P' || value.charAt(0) == 'p' || value.charAt(0) == '-')) {
+            return Duration.parse(value);
+        } else {
+            return Duration.ofMillis(Long.parseLong(value));
+        }
     }
 
     /**
      *
+     * @param namespace
      * @param key
+     * @param defaultValue
      * @return
      */
-    public boolean containsNonEmptyProperty(Enum key) {
+    public long getLong(Namespace namespace, String key, long defaultValue) {
+        Object value = getTypedValue(namespace, key, LONG_PARSER, LONG_PARSER);
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public long getLong(String key, long defaultValue) {
+        return getLong(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public long getLong(Enum key, long defaultValue) {
+        return getLong(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public long getLong(Namespace namespace, Enum key, long defaultValue) {
+        return getLong(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public double getDouble(Namespace namespace, String key, double defaultValue) {
+        Object value = getTypedValue(namespace, key, DOUBLE_PARSER, DOUBLE_PARSER);
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public double getDouble(String key, double defaultValue) {
+        return getDouble(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public double getDouble(Enum key, double defaultValue) {
+        return getDouble(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public double getDouble(Namespace namespace, Enum key, double defaultValue) {
+        return getDouble(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     * Only "true" and "false" (ignoring case) are accepted, anything else
+     * results in the default value
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getBoolean(Namespace namespace, String key, boolean defaultValue) {
+        Object value = getTypedValue(namespace, key, BOOLEAN_PARSER, BOOLEAN_PARSER);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return getBoolean(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getBoolean(Enum key, boolean defaultValue) {
+        return getBoolean(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public boolean getBoolean(Namespace namespace, Enum key, boolean defaultValue) {
+        return getBoolean(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     * The value is either given in ISO-8601 format (e. g. PT15M) or as a plain
+     * number of milliseconds
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Duration getDuration(Namespace namespace, String key, Duration defaultValue) {
+        Object value = getTypedValue(namespace, key, DURATION_PARSER, DURATION_PARSER);
+        if (value instanceof Duration) {
+            return (Duration) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Duration getDuration(String key, Duration defaultValue) {
+        return getDuration(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Duration getDuration(Enum key, Duration defaultValue) {
+        return getDuration(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Duration getDuration(Namespace namespace, Enum key, Duration defaultValue) {
+        return getDuration(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     * The value has to match the name of one of the constants of the enum
+     * exactly
+     *
+     * @param <T>
+     * @param namespace
+     * @param key
+     * @param enumClass
+     * @param defaultValue
+     * @return
+     */
+    public <T extends Enum<T>> T getEnum(Namespace namespace, String key, Class<T> enumClass, T defaultValue) {
+        if (enumClass == null) {
+            throw new NullPointerException("enumClass may not be null");
+        }
+        Object value = getTypedValue(namespace, key, enumClass, v -> Enum.valueOf(enumClass, v));
+        if (enumClass.isInstance(value)) {
+            return enumClass.cast(value);
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param key
+     * @param enumClass
+     * @param defaultValue
+     * @return
+     */
+    public <T extends Enum<T>> T getEnum(String key, Class<T> enumClass, T defaultValue) {
+        return getEnum(DEFAULT_NAMESPACE, key, enumClass, defaultValue);
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param key
+     * @param enumClass
+     * @param defaultValue
+     * @return
+     */
+    public <T extends Enum<T>> T getEnum(Enum key, Class<T> enumClass, T defaultValue) {
+        return getEnum(DEFAULT_NAMESPACE, key.toString(), enumClass, defaultValue);
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param namespace
+     * @param key
+     * @param enumClass
+     * @param defaultValue
+     * @return
+     */
+    public <T extends Enum<T>> T getEnum(Namespace namespace, Enum key, Class<T> enumClass, T defaultValue) {
+        return getEnum(namespace, key.toString(), enumClass, defaultValue);
+    }
+
+    /**
+     * The value is parsed with {@link ToolBelt#extractList(String)}. The list
+     * returned is read-only
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getList(Namespace namespace, String key, List<String> defaultValue) {
+        Object value = getTypedValue(namespace, key, LIST_PARSER, LIST_PARSER);
+        if (value instanceof List) {
+            return (List<String>) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public List<String> getList(String key, List<String> defaultValue) {
+        return getList(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public List<String> getList(Enum key, List<String> defaultValue) {
+        return getList(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public List<String> getList(Namespace namespace, Enum key, List<String> defaultValue) {
+        return getList(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     * The value is parsed with {@link ToolBelt#extractMap(String)}. The map
+     * returned is read-only
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getMap(Namespace namespace, String key, Map<String, String> defaultValue) {
+        Object value = getTypedValue(namespace, key, MAP_PARSER, MAP_PARSER);
+        if (value instanceof Map) {
+            return (Map<String, String>) value;
+        }
+        recordDefault(namespace, key);
+        return defaultValue;
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Map<String, String> getMap(String key, Map<String, String> defaultValue) {
+        return getMap(DEFAULT_NAMESPACE, key, defaultValue);
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Map<String, String> getMap(Enum key, Map<String, String> defaultValue) {
+        return getMap(DEFAULT_NAMESPACE, key.toString(), defaultValue);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public Map<String, String> getMap(Namespace namespace, Enum key, Map<String, String> defaultValue) {
+        return getMap(namespace, key.toString(), defaultValue);
+    }
+
+    /**
+     * Create a view of the properties in the given namespace whose keys are
+     * the constants of the given enum. The view follows all later
+     * modifications of this instance
+     *
+     * @param <E>
+     * @param namespace
+     * @param enumClass
+     * @return
+     */
+    public <E extends Enum<E>> PropertyView<E> bind(Namespace namespace, Class<E> enumClass) {
+        return new PropertyView<>(this, namespace, enumClass);
+    }
+
+    /**
+     * Create a view of the properties in the default namespace whose keys are
+     * the constants of the given enum
+     *
+     * @param <E>
+     * @param enumClass
+     * @return
+     */
+    public <E extends Enum<E>> PropertyView<E> bind(Class<E> enumClass) {
+        return bind(DEFAULT_NAMESPACE, enumClass);
+    }
+
+    /**
+     * A counter which is incremented with every modification of a property
+     * value. Consumers can compare it with the version they have seen last to
+     * find out cheaply whether anything has changed in the meantime
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The value of {@link #getVersion()} after the last modification of a
+     * property in the given namespace. With lazy resolution, a namespace is
+     * also considered modified when the resolved value of one of its
+     * properties changes because a property it refers to has been modified
+     *
+     * @param namespace
+     * @return 0 if no property of the namespace has been modified yet
+     */
+    public long getVersion(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        Long namespaceVersion = getNamespaceVersions().get(namespace);
+        return namespaceVersion == null ? 0 : namespaceVersion;
+    }
+
+    /**
+     * Register a listener which is notified once after each batch of
+     * modifications, i. e. after each single update or after the outermost
+     * {@link #commitBulk()}. Modifications which do not change a value are not
+     * reported. A listener is registered at most once
+     *
+     * @param listener
+     */
+    public void addPropertyChangeListener(IPropertyChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener may not be null");
+        }
+        synchronized (this) {
+            if (propertyChangeListeners == null) {
+                propertyChangeListeners = new CopyOnWriteArrayList<>();
+            }
+        }
+        propertyChangeListeners.addIfAbsent(listener);
+    }
+
+    /**
+     *
+     * @param listener
+     */
+    public void removePropertyChangeListener(IPropertyChangeListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener may not be null");
+        }
+        if (propertyChangeListeners != null) {
+            propertyChangeListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Start recording access statistics for this instance (reads, misses,
+     * default values returned by the typed getters, parse failures and macro
+     * resolutions per property, as well as the time spent resolving backward
+     * references). While the statistics are disabled, they cost no more than a
+     * null check per access. Concurrent calls return the same instance
+     *
+     * @return The statistics, which can be published through JMX with
+     * {@link PropertyStatistics#register(String)}
+     */
+    public synchronized PropertyStatistics enableStatistics() {
+        PropertyStatistics propertyStatistics = statistics;
+        if (propertyStatistics == null) {
+            propertyStatistics = new PropertyStatistics(this);
+            setStatistics(propertyStatistics);
+        }
+        return propertyStatistics;
+    }
+
+    /**
+     * Stop recording access statistics. An MBean registered for the
+     * statistics is not unregistered
+     */
+    public void disableStatistics() {
+        setStatistics(null);
+    }
+
+    /**
+     *
+     * @return The statistics or null if they are not enabled
+     */
+    public PropertyStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     *
+     * @param statistics
+     */
+    void setStatistics(PropertyStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    private void recordDefault(Namespace namespace, String key) {
+        PropertyStatistics propertyStatistics = statistics;
+        if (propertyStatistics != null) {
+            propertyStatistics.recordDefault(namespace, key);
+        }
+    }
+
+    /**
+     * Check if the property exists in the default namespace
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsProperty(String key) {
+        return containsProperty(DEFAULT_NAMESPACE, key);
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsProperty(Enum key) {
+        return containsProperty(DEFAULT_NAMESPACE, key.toString());
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsNonEmptyProperty(String key) {
+        return containsNonEmptyProperty(DEFAULT_NAMESPACE, key);
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean containsNonEmptyProperty(Enum key) {
         return containsNonEmptyProperty(DEFAULT_NAMESPACE, key.toString());
     }
 
     /**
      *
-     * @param namespace
-     * @param key
-     * @return
+     * @param namespace
+     * @param key
+     * @return
+     */
+    public boolean containsProperty(Namespace namespace, Enum key) {
+        return containsProperty(namespace, key.toString());
+    }
+
+    /**
+     * Check if the property exists in the namespace provided
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    public boolean containsProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        Map<String, String> properties = namespaceData.get(namespace);
+        return properties != null && properties.containsKey(key);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    public boolean containsNonEmptyProperty(Namespace namespace, Enum key) {
+        return containsNonEmptyProperty(namespace, key.toString());
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    public boolean containsNonEmptyProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        String value = getProperty(namespace, key);
+        return value != null && value.trim().length() > 0;
+    }
+
+    /**
+     * Return all properties in the default namespace
+     *
+     * @return
+     */
+    public Map<String, String> getProperties() {
+        return getProperties(DEFAULT_NAMESPACE);
+    }
+
+    /**
+     * Return all properties in the namespace given
+     *
+     * @param namespace
+     * @return
+     */
+    public Map<String, String> getProperties(Namespace namespace) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (namespaceData.containsKey(namespace)) {
+            if (!lazyResolution) {
+                return namespaceData.get(namespace);
+            }
+            Map<String, String> properties = new TreeMap<>();
+            for (Map.Entry<String, String> entry : namespaceData.get(namespace).entrySet()) {
+                properties.put(entry.getKey(), resolveLazily(new PropertyKey(namespace, entry.getKey()), entry.getValue()));
+            }
+            return properties;
+        } else {
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Get the properties in the default namespace whose keys start with the
+     * given prefix
+     *
+     * @param prefix
+     * @return
+     */
+    public Map<String, String> getPropertiesWithPrefix(String prefix) {
+        return getPropertiesWithPrefix(DEFAULT_NAMESPACE, prefix);
+    }
+
+    /**
+     * Get the properties in the namespace provided whose keys start with the
+     * given prefix, in the order of their keys. The result is a read-only view
+     * of the key range, so the effort depends on the number of properties
+     * returned rather than on the size of the namespace (with lazy resolution,
+     * the resolved values of the range are copied)
+     *
+     * @param namespace
+     * @param prefix
+     * @return
+     */
+    public Map<String, String> getPropertiesWithPrefix(Namespace namespace, String prefix) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix may not be null");
+        }
+        Map<String, String> properties = namespaceData.get(namespace);
+        if (properties == null) {
+            return Collections.emptyMap();
+        }
+        NavigableMap<String, String> range = getPrefixRange((NavigableMap<String, String>) properties, prefix);
+        if (!lazyResolution) {
+            return Collections.unmodifiableMap(range);
+        }
+        Map<String, String> resolvedProperties = new TreeMap<>();
+        for (Map.Entry<String, String> entry : range.entrySet()) {
+            resolvedProperties.put(entry.getKey(), resolveLazily(new PropertyKey(namespace, entry.getKey()), entry.getValue()));
+        }
+        return Collections.unmodifiableMap(resolvedProperties);
+    }
+
+    /**
+     * Get the properties in the default namespace below the given node of the
+     * key hierarchy
+     *
+     * @param path
+     * @return
+     */
+    public Map<String, String> getPropertiesBelow(String path) {
+        return getPropertiesBelow(DEFAULT_NAMESPACE, path);
+    }
+
+    /**
+     * Get the properties below the given node of the key hierarchy, e. g. all
+     * properties "db.pool.*" for the path "db.pool". The property named like
+     * the path itself is not included
+     *
+     * @param namespace
+     * @param path
+     * @return
+     */
+    public Map<String, String> getPropertiesBelow(Namespace namespace, String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("path may not be null");
+        }
+        return getPropertiesWithPrefix(namespace, path + KEY_SEPARATOR);
+    }
+
+    /**
+     * Get the properties in the default namespace whose keys match the given
+     * pattern, see {@link #getPropertiesMatching(Namespace, String)}
+     *
+     * @param pattern
+     * @return
+     */
+    public Map<String, String> getPropertiesMatching(String pattern) {
+        return getPropertiesMatching(DEFAULT_NAMESPACE, pattern);
+    }
+
+    /**
+     * Get the properties whose keys match a hierarchical pattern such as
+     * "db.*.url", in the order of their keys. A segment "*" matches exactly
+     * one segment of a key, "**" matches any number of segments and a '*'
+     * within a segment matches any characters within that segment. The query
+     * uses an index of the key segments which is built with the first query
+     * for a namespace and maintained from then on
+     *
+     * @param namespace
+     * @param pattern
+     * @return A copy of the matching properties
+     */
+    public Map<String, String> getPropertiesMatching(Namespace namespace, String pattern) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (pattern == null) {
+            throw new IllegalArgumentException("pattern may not be null");
+        }
+        Map<String, String> properties = new TreeMap<>();
+        for (String key : getKeyTrie(namespace).find(pattern)) {
+            String value = lookupProperty(namespace, key);
+            if (value != null) {
+                properties.put(key, value);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     *
+     * @param properties
+     * @param prefix
+     * @return The part of the map with the keys starting with the prefix
+     */
+    private static NavigableMap<String, String> getPrefixRange(NavigableMap<String, String> properties, String prefix) {
+        if (prefix.isEmpty()) {
+            return properties;
+        }
+
+        //.... The first string after all strings with the prefix: increment the last character which can be incremented
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return properties.tailMap(prefix, true);
+        }
+        String upperBound = prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+        return properties.subMap(prefix, true, upperBound, false);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return The keys of the properties in the namespace provided
+     */
+    Set<String> getKeySet(Namespace namespace) {
+        Map<String, String> properties = namespaceData.get(namespace);
+        return properties == null ? Collections.emptySet() : properties.keySet();
+    }
+
+    /**
+     * The index of the key segments is built on demand
+     *
+     * @param namespace
+     * @return
+     */
+    private KeyTrie getKeyTrie(Namespace namespace) {
+        Map<Namespace, KeyTrie> tries = keyTries;
+        if (tries == null) {
+            tries = new ConcurrentHashMap<>();
+            keyTries = tries;
+        }
+        return tries.computeIfAbsent(namespace, n -> new KeyTrie(getKeySet(n)));
+    }
+
+    /**
+     *
+     * @param element
+     * @return
+     */
+    public static boolean containsPropertiesElement(Element element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element may not be null");
+        }
+        return element.getChild(XML.properties.toString()) != null;
+    }
+
+    /**
+     *
+     * @param enums
+     */
+    public void validatePropertyNames(Enum... enums) {
+        validatePropertyNames(DEFAULT_NAMESPACE, enums);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param enums
+     */
+    public void validatePropertyNames(Namespace namespace, Enum... enums) {
+        if (enums == null) {
+            throw new IllegalArgumentException("enums may not be null");
+        }
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        for (Enum e : enums) {
+            if (!containsProperty(namespace, e.toString())) {
+                if (namespace.equals(DEFAULT_NAMESPACE)) {
+                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in default namespace");
+                } else {
+                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in namespace " + namespace);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param <E>
+     * @param propertyEnum
+     */
+    public <E extends Enum> void validateAllPropertyNames(E propertyEnum) {
+        validateAllPropertyNames(DEFAULT_NAMESPACE, propertyEnum);
+    }
+
+    /**
+     *
+     * @param <E>
+     * @param namespace
+     * @param propertyEnum
+     */
+    public <E extends Enum> void validateAllPropertyNames(Namespace namespace, E propertyEnum) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (propertyEnum == null) {
+            throw new IllegalArgumentException("propertyEnum may not be null");
+        }
+        for (String key : PropertyView.getKeys(propertyEnum.getDeclaringClass())) {
+            if (!containsProperty(namespace, key)) {
+                if (namespace.equals(DEFAULT_NAMESPACE)) {
+                    throw new IllegalArgumentException("Missing property key '" + key + "' in default namespace");
+                } else {
+                    throw new IllegalArgumentException("Missing property key '" + key + "' in namespace " + namespace);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param propertyKey The property the value belongs to
+     * @param value
+     * @param template The compiled macros of the value, or null if it does not
+     * contain any
+     * @return
+     */
+    private ResolutionResult resolveMacros(PropertyKey propertyKey, String value, MacroTemplate template) {
+        if (propertyKey == null) {
+            throw new IllegalArgumentException("propertyKey may not be null");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value may not be null");
+        }
+
+        ResolutionResult resolutionResult = new ResolutionResult();
+        if (template == null) {
+            resolutionResult.setValue(value);
+            return resolutionResult;
+        }
+        PropertyStatistics propertyStatistics = statistics;
+        if (propertyStatistics != null) {
+            propertyStatistics.recordMacroResolution(propertyKey);
+        }
+        Namespace namespace = propertyKey.getNamespace();
+        resolutionResult.setFoundReplacement(true);
+        switch (resolutionPolicy) {
+            case ALL_NAMESPACES:
+            case LAZY_ALL_NAMESPACES:
+                resolutionResult.setValue(template.resolve(referencedKey -> {
+                    Namespace owner = findFirstNamespace(referencedKey, Collections.emptySet());
+                    return owner == null ? null : getProperty(owner, referencedKey);
+                }));
+                break;   // No fall-through required as we have convered all namespaces
+
+            case WITHIN_NAMESPACE:
+            case LAZY_WITHIN_NAMESPACE:
+                resolutionResult.setValue(template.resolve(referencedKey -> containsProperty(namespace, referencedKey) ? getProperty(namespace, referencedKey) : null));
+                break;
+
+            default:
+                resolutionResult.setValue(value);
+        }
+
+        return resolutionResult;
+    }
+
+    /**
+     * Return an immutable snapshot of the current state of this instance which
+     * is optimized for lookups. The snapshot offers the same read API, so it
+     * can be handed to any consumer of a PropertyManager, but all methods
+     * which would modify it throw an UnsupportedOperationException
+     *
+     * @return
+     */
+    public PropertyManager freeze() {
+        return new FrozenPropertyManager(this);
+    }
+
+    /**
+     * Add already resolved values directly, i. e. without resolving any macros
+     * and without regard to the overwrite policy. The macro index is rebuilt
+     * with the next write
+     *
+     * @param namespace
+     * @param properties
+     */
+    void loadResolvedProperties(Namespace namespace, Map<String, String> properties) {
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            putValue(new PropertyKey(namespace, entry.getKey()), entry.getValue(), true);
+        }
+        macroIndexValid = false;
+        firePropertyChange();
+    }
+
+    /**
+     * Create an independent copy of this instance, including all settings and
+     * the macro dependency index. Values are copied as they are, i. e. no
+     * macros are resolved again
+     *
+     * @return
+     */
+    PropertyManager copy() {
+        PropertyManager copy = new PropertyManager();
+        copyInto(copy);
+        return copy;
+    }
+
+    /**
+     * Copy data, settings and macro dependency index of this instance into
+     * the given (empty) instance
+     *
+     * @param copy
+     */
+    void copyInto(PropertyManager copy) {
+        copy.resolutionPolicy = resolutionPolicy;
+        copy.lookupPolicy = lookupPolicy;
+        copy.resolveMacros = resolveMacros;
+        copy.lazyResolution = lazyResolution;
+        copy.avoidOverwrites = avoidOverwrites;
+        copy.macroPattern = macroPattern;
+        copy.macroSyntax = macroSyntax;
+        copy.version = version;
+        copy.namespaceVersions.putAll(getNamespaceVersions());
+        for (Map.Entry<Namespace, Map<String, String>> entry : namespaceData.entrySet()) {
+            copy.namespaceData.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+        }
+        for (Map.Entry<String, TreeSet<Namespace>> entry : getKeyNamespaces().entrySet()) {
+            copy.keyNamespaces.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+        }
+        if (macroIndexValid) {
+
+            //.... The templates are immutable, so they can be shared
+            copy.macroTemplates.putAll(macroTemplates);
+            for (Map.Entry<String, Set<PropertyKey>> entry : macroDependents.entrySet()) {
+                copy.macroDependents.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+        } else {
+            copy.macroIndexValid = false;
+        }
+        copy.resolvedValues.putAll(getResolvedValues());
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(300);
+        for (Namespace namespace : getNamespaces()) {
+            boolean isDefault = namespace.equals(DEFAULT_NAMESPACE);
+            for (String key : getProperties(namespace).keySet()) {
+                if (isDefault) {
+                    sb.append("(): ");
+                    sb.append(key);
+                    sb.append(" - ");
+                    sb.append(getProperty(namespace, key));
+                    sb.append("\n");
+                } else {
+                    sb.append("(");
+                    sb.append(namespace);
+                    sb.append("): ");
+                    sb.append(key);
+                    sb.append(" - ");
+                    sb.append(getProperty(namespace, key));
+                    sb.append("\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * All modifications of property values end up here
+     *
+     * @param propertyKey
+     * @param value
+     * @param notify False if the modification should not be reported to the
+     * listeners
+     */
+    private void putValue(PropertyKey propertyKey, String value, boolean notify) {
+
+        //.... Keys and short values are shared with all other instances through the pool, if it is enabled
+        String key = StringPool.intern(propertyKey.getKey());
+        value = StringPool.internValue(value);
+        String previousValue = namespaceData.computeIfAbsent(propertyKey.getNamespace(), k -> new TreeMap<>()).put(key, value);
+        if (previousValue == null) {
+            getKeyNamespaces().computeIfAbsent(key, k -> new TreeSet<>()).add(propertyKey.getNamespace());
+            updateKeyTrie(propertyKey, true);
+        }
+        getTypedValueCache().invalidate(propertyKey);
+        long previousVersion = locationCache == null ? 0 : getVersion();
+        recordChange(propertyKey, false, notify && !value.equals(previousValue));
+        updateLocationCache(key, previousVersion, previousValue == null);
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @param added
+     */
+    private void updateKeyTrie(PropertyKey propertyKey, boolean added) {
+        Map<Namespace, KeyTrie> tries = keyTries;
+        KeyTrie trie = tries == null ? null : tries.get(propertyKey.getNamespace());
+        if (trie != null) {
+            if (added) {
+                trie.add(propertyKey.getKey());
+            } else {
+                trie.remove(propertyKey.getKey());
+            }
+        }
+    }
+
+    /**
+     * Update the version stamps after a modification, drop the memoized
+     * resolved values depending on the property and collect the change for
+     * the listeners
+     *
+     * @param propertyKey
+     * @param removed
+     * @param notify
+     */
+    private void recordChange(PropertyKey propertyKey, boolean removed, boolean notify) {
+        version++;
+        Map<Namespace, Long> versions = getNamespaceVersions();
+        versions.put(propertyKey.getNamespace(), version);
+        PropertyChangeEvent event = notify ? getPendingEvent() : null;
+        if (event != null) {
+            if (removed) {
+                event.addRemoved(propertyKey.getNamespace(), propertyKey.getKey());
+            } else {
+                event.addChanged(propertyKey.getNamespace(), propertyKey.getKey());
+            }
+        }
+        if (!lazyResolution) {
+            return;
+        }
+
+        //.... With lazy resolution, the properties referring to this one change their resolved values as well
+        Map<PropertyKey, String> resolved = getResolvedValues();
+        resolved.remove(propertyKey);
+        if (!macroIndexValid) {
+            clearResolvedValues();
+            return;
+        }
+        if (!macroDependents.containsKey(propertyKey.getKey())) {
+            return;
+        }
+        for (PropertyKey dependent : collectDependents(Collections.singleton(propertyKey.getKey()))) {
+            resolved.remove(dependent);
+            getTypedValueCache().invalidate(dependent);
+            versions.put(dependent.getNamespace(), version);
+            if (event != null) {
+                event.addChanged(dependent.getNamespace(), dependent.getKey());
+            }
+        }
+    }
+
+    /**
+     *
+     * @return The event collecting the modifications, or null if nobody is
+     * interested in them
      */
-    public boolean containsProperty(Namespace namespace, Enum key) {
-        return containsProperty(namespace, key.toString());
+    private PropertyChangeEvent getPendingEvent() {
+        if (pendingEvent == null && (collectingChanges || hasPropertyChangeListeners())) {
+            pendingEvent = new PropertyChangeEvent(this);
+        }
+        return pendingEvent;
     }
 
     /**
-     * Check if the property exists in the namespace provided
-     *
-     * @param namespace
-     * @param key
-     * @return
+     * Notify the listeners about the modifications collected so far, unless a
+     * bulk load is still in progress
      */
-    public boolean containsProperty(Namespace namespace, String key) {
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+    private void firePropertyChange() {
+        if (bulkDepth > 0 || collectingChanges || pendingEvent == null) {
+            return;
         }
-        if (key == null) {
-            throw new IllegalArgumentException("key may not be null");
+        PropertyChangeEvent event = pendingEvent;
+        pendingEvent = null;
+        firePropertyChange(event);
+    }
+
+    /**
+     *
+     * @param event
+     */
+    void firePropertyChange(PropertyChangeEvent event) {
+        if (event.isEmpty() || !hasPropertyChangeListeners()) {
+            return;
         }
-        if (!namespaceData.containsKey(namespace)) {
-            return false;
+        for (IPropertyChangeListener listener : propertyChangeListeners) {
+            listener.propertiesChanged(event);
         }
-        return namespaceData.get(namespace).containsKey(key);
     }
 
     /**
      *
-     * @param namespace
-     * @param key
      * @return
      */
-    public boolean containsNonEmptyProperty(Namespace namespace, Enum key) {
-        return containsNonEmptyProperty(namespace, key.toString());
+    boolean hasPropertyChangeListeners() {
+        return propertyChangeListeners != null && !propertyChangeListeners.isEmpty();
     }
 
     /**
+     * Collect the modifications in the given event instead of notifying the
+     * listeners of this instance, until {@link #stopCollectingChanges()} is
+     * called. This is used by wrappers which publish the modifications of an
+     * internal instance as their own
      *
-     * @param namespace
-     * @param key
-     * @return
+     * @param event
      */
-    public boolean containsNonEmptyProperty(Namespace namespace, String key) {
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+    void startCollectingChanges(PropertyChangeEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("event may not be null");
         }
-        if (key == null) {
-            throw new IllegalArgumentException("key may not be null");
+        pendingEvent = event;
+        collectingChanges = true;
+    }
+
+    /**
+     *
+     * @return The modifications collected since
+     * {@link #startCollectingChanges(PropertyChangeEvent)}
+     */
+    PropertyChangeEvent stopCollectingChanges() {
+        PropertyChangeEvent event = pendingEvent;
+        pendingEvent = null;
+        collectingChanges = false;
+        return event;
+    }
+
+    /**
+     * The map is transient, so it has to be recreated after deserialization
+     *
+     * @return
+     */
+    private Map<Namespace, Long> getNamespaceVersions() {
+        if (namespaceVersions == null) {
+            namespaceVersions = new HashMap<>();
         }
-        if (!namespaceData.containsKey(namespace)) {
-            return false;
+        return namespaceVersions;
+    }
+
+    /**
+     *
+     * @return
+     */
+    TypedValueCache getTypedValueCache() {
+        if (typedValueCache == null) {
+            typedValueCache = new TypedValueCache();
         }
-        return namespaceData.get(namespace).containsKey(key) && namespaceData.get(namespace).get(key).trim().length() > 0;
+        return typedValueCache;
     }
 
     /**
-     * Return all properties in the default namespace
+     * The index is transient, so it has to be rebuilt after deserialization
      *
      * @return
      */
-    public Map<String, String> getProperties() {
-        return getProperties(DEFAULT_NAMESPACE);
+    private Map<String, TreeSet<Namespace>> getKeyNamespaces() {
+        if (keyNamespaces == null) {
+            Map<String, TreeSet<Namespace>> index = new HashMap<>();
+            for (Map.Entry<Namespace, Map<String, String>> entry : namespaceData.entrySet()) {
+                for (String key : entry.getValue().keySet()) {
+                    index.computeIfAbsent(key, k -> new TreeSet<>()).add(entry.getKey());
+                }
+            }
+            keyNamespaces = index;
+        }
+        return keyNamespaces;
     }
 
     /**
-     * Return all properties in the namespace given
      *
-     * @param namespace
      * @return
      */
-    public Map<String, String> getProperties(Namespace namespace) {
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+    private Map<PropertyKey, String> getResolvedValues() {
+        if (resolvedValues == null) {
+            resolvedValues = new ConcurrentHashMap<>();
         }
-        if (namespaceData.containsKey(namespace)) {
-            return namespaceData.get(namespace);
-        } else {
-            return new HashMap<>();
+        return resolvedValues;
+    }
+
+    /**
+     *
+     */
+    private void clearResolvedValues() {
+        if (!getResolvedValues().isEmpty()) {
+            resolvedValues.clear();
+            getTypedValueCache().clear();
         }
     }
 
     /**
+     * Resolve the macros of a raw value on first access. The properties it
+     * refers to are resolved (and memoized) first, in the same order as a bulk
+     * load would resolve them. Properties which are part of a circular
+     * reference keep their raw value
      *
-     * @param element
+     * @param propertyKey
+     * @param value The raw value
      * @return
      */
-    public static boolean containsPropertiesElement(Element element) {
-        if (element == null) {
-            throw new IllegalArgumentException("element may not be null");
+    private String resolveLazily(PropertyKey propertyKey, String value) {
+        Map<PropertyKey, String> resolved = getResolvedValues();
+        String resolvedValue = resolved.get(propertyKey);
+        if (resolvedValue != null) {
+            return resolvedValue;
         }
-        return element.getChild(XML.properties.toString()) != null;
+        if (getMacroTemplate(propertyKey, value) == null) {
+            resolved.put(propertyKey, value);
+            return value;
+        }
+        Set<PropertyKey> cyclic = new HashSet<>();
+        for (PropertyKey target : orderForResolution(Collections.singleton(propertyKey), k -> !resolved.containsKey(k), this::getLazyMacroTargets, cyclic, null)) {
+            String rawValue = namespaceData.get(target.getNamespace()).get(target.getKey());
+            resolvedValue = cyclic.contains(target) ? rawValue : resolveMacros(target, rawValue, getMacroTemplate(target, rawValue)).getValue();
+            resolved.put(target, resolvedValue);
+        }
+        return resolvedValue;
     }
 
     /**
      *
-     * @param enums
+     * @param propertyKey
+     * @return The properties referenced by the macros in the raw value of the
+     * given property
      */
-    public void validatePropertyNames(Enum... enums) {
-        validatePropertyNames(DEFAULT_NAMESPACE, enums);
+    private List<PropertyKey> getLazyMacroTargets(PropertyKey propertyKey) {
+        MacroTemplate template = getMacroTemplate(propertyKey, namespaceData.get(propertyKey.getNamespace()).get(propertyKey.getKey()));
+        if (template == null) {
+            return Collections.emptyList();
+        }
+        List<PropertyKey> targets = new ArrayList<>(template.getReferences().size());
+        for (String reference : template.getReferences()) {
+            PropertyKey target = locateMacroTarget(propertyKey.getNamespace(), reference);
+            if (target != null && namespaceData.containsKey(target.getNamespace()) && namespaceData.get(target.getNamespace()).containsKey(target.getKey())) {
+                targets.add(target);
+            }
+        }
+        return targets;
     }
 
     /**
+     * Store a raw value during a bulk load (or with lazy resolution) and keep
+     * track of its macros
      *
-     * @param namespace
-     * @param enums
+     * @param propertyKey
+     * @param value
+     * @param template The compiled macros of the value, or null if it does not
+     * contain any
+     * @param notify
      */
-    public void validatePropertyNames(Namespace namespace, Enum... enums) {
-        if (enums == null) {
-            throw new IllegalArgumentException("enums may not be null");
+    private void storeRawValue(PropertyKey propertyKey, String value, MacroTemplate template, boolean notify) {
+        putValue(propertyKey, value, notify);
+        if (macroIndexValid) {
+            updateMacroIndex(propertyKey, template);
         }
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+        if (bulkDepth > 0) {
+            bulkChangedKeys.add(propertyKey.getKey());
+            if (template != null) {
+                bulkPendingProperties.add(propertyKey);
+            }
         }
-        for (Enum e : enums) {
-            if (!containsProperty(namespace, e.toString())) {
-                if (namespace.equals(DEFAULT_NAMESPACE)) {
-                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in default namespace");
-                } else {
-                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in namespace " + namespace);
+    }
+
+    /**
+     * Store a raw value taken over from another instance. This is not a
+     * modification of the effective value, so the listeners are not notified
+     *
+     * @param propertyKey
+     * @param value
+     */
+    void inheritValue(PropertyKey propertyKey, String value) {
+        storeRawValue(propertyKey, value, compileMacros(value), false);
+    }
+
+    /**
+     *
+     * @return The properties whose values still contain macros
+     */
+    Collection<PropertyKey> getUnresolvedProperties() {
+        if (resolveMacros && macroIndexValid) {
+            return macroTemplates.keySet();
+        }
+        List<PropertyKey> unresolved = new ArrayList<>();
+        for (Map.Entry<Namespace, Map<String, String>> entry : namespaceData.entrySet()) {
+            for (Map.Entry<String, String> property : entry.getValue().entrySet()) {
+                if (compileMacros(property.getValue()) != null) {
+                    unresolved.add(new PropertyKey(entry.getKey(), property.getKey()));
                 }
             }
         }
+        return unresolved;
     }
 
     /**
+     * Find the namespace a macro refers to with ALL_NAMESPACES
      *
-     * @param <E>
-     * @param propertyEnum
+     * @param key
+     * @param ignoredNamespaces The names of namespaces to skip; the default
+     * namespace is never skipped
+     * @return The first namespace (in their natural order) which contains the
+     * key or null
      */
-    public <E extends Enum> void validateAllPropertyNames(E propertyEnum) {
-        validateAllPropertyNames(DEFAULT_NAMESPACE, propertyEnum);
+    Namespace findFirstNamespace(String key, Set<String> ignoredNamespaces) {
+        TreeSet<Namespace> owners = getKeyNamespaces().get(key);
+        if (owners == null) {
+            return null;
+        }
+        if (ignoredNamespaces.isEmpty()) {
+            return owners.first();
+        }
+        for (Namespace namespace : owners) {
+            if (isVisible(namespace, ignoredNamespaces)) {
+                return namespace;
+            }
+        }
+        return null;
     }
 
     /**
      *
-     * @param <E>
      * @param namespace
-     * @param propertyEnum
+     * @param ignoredNamespaces
+     * @return
      */
-    public <E extends Enum> void validateAllPropertyNames(Namespace namespace, E propertyEnum) {
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+    static boolean isVisible(Namespace namespace, Set<String> ignoredNamespaces) {
+        return namespace.equals(DEFAULT_NAMESPACE) || !ignoredNamespaces.contains(namespace.toString());
+    }
+
+    /**
+     * Store a (resolved) value and keep the macro dependency index up to date
+     *
+     * @param propertyKey
+     * @param value
+     * @param template The compiled macros of the value, or null if it does not
+     * contain any
+     */
+    private void storeValue(PropertyKey propertyKey, String value, MacroTemplate template) {
+        putValue(propertyKey, value, true);
+        if (macroIndexValid) {
+            updateMacroIndex(propertyKey, template);
         }
-        if (propertyEnum == null) {
-            throw new IllegalArgumentException("propertyEnum may not be null");
+    }
+
+    /**
+     *
+     * @param value
+     * @return The keys referenced by the macros in the value
+     */
+    Set<String> extractMacroReferences(String value) {
+        MacroTemplate template = compileMacros(value);
+        return template == null ? Collections.emptySet() : template.getReferences();
+    }
+
+    /**
+     *
+     * @param value
+     * @return The compiled macros of the value, or null if it does not contain
+     * any
+     */
+    MacroTemplate compileMacros(String value) {
+        MacroTemplate.Syntax syntax = macroSyntax;
+        if (syntax == null || syntax.getPattern() != macroPattern) {
+            syntax = new MacroTemplate.Syntax(macroPattern);
+            macroSyntax = syntax;
         }
-        for (Enum e : propertyEnum.getClass().getEnumConstants()) {
-            if (!containsProperty(namespace, e.toString())) {
-                if (namespace.equals(DEFAULT_NAMESPACE)) {
-                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in default namespace");
-                } else {
-                    throw new IllegalArgumentException("Missing property key '" + e.toString() + "' in namespace " + namespace);
+        return syntax.compile(value);
+    }
+
+    /**
+     * The compiled macros of a stored value, taken from the macro index if
+     * possible (the index contains all values with macros)
+     *
+     * @param propertyKey
+     * @param value
+     * @return
+     */
+    private MacroTemplate getMacroTemplate(PropertyKey propertyKey, String value) {
+        return macroIndexValid ? macroTemplates.get(propertyKey) : compileMacros(value);
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @param template The compiled macros of the value, or null if it does not
+     * contain any
+     */
+    private void updateMacroIndex(PropertyKey propertyKey, MacroTemplate template) {
+        Set<String> references = template == null ? Collections.emptySet() : template.getReferences();
+        MacroTemplate oldTemplate = template == null ? macroTemplates.remove(propertyKey) : macroTemplates.put(propertyKey, template);
+        if (oldTemplate != null) {
+            for (String reference : oldTemplate.getReferences()) {
+                if (!references.contains(reference)) {
+                    Set<PropertyKey> dependents = macroDependents.get(reference);
+                    if (dependents != null) {
+                        dependents.remove(propertyKey);
+                        if (dependents.isEmpty()) {
+                            macroDependents.remove(reference);
+                        }
+                    }
                 }
             }
         }
+        for (String reference : references) {
+            macroDependents.computeIfAbsent(reference, k -> new HashSet<>()).add(propertyKey);
+        }
+    }
+
+    /**
+     * Scan all values for macros which are still unresolved
+     */
+    private void rebuildMacroIndex() {
+        macroTemplates = new HashMap<>();
+        macroDependents = new HashMap<>();
+        macroIndexValid = true;
+        for (Namespace namespace : namespaceData.keySet()) {
+            for (Map.Entry<String, String> entry : namespaceData.get(namespace).entrySet()) {
+                updateMacroIndex(new PropertyKey(namespace, entry.getKey()), compileMacros(entry.getValue()));
+            }
+        }
     }
 
     /**
+     * Collect all properties which directly or transitively depend on one of
+     * the given keys through a macro that has not been resolved yet
      *
-     * @param namespace
-     * @param testValue
+     * @param keys
      * @return
      */
-    private ResolutionResult resolveMacros(Namespace namespace, String testValue) {
-        if (namespace == null) {
-            throw new IllegalArgumentException("namespace may not be null");
+    private Set<PropertyKey> collectDependents(Collection<String> keys) {
+        Set<PropertyKey> affected = new TreeSet<>();
+        Set<String> seen = new HashSet<>(keys);
+        Deque<String> pending = new ArrayDeque<>(keys);
+        while (!pending.isEmpty()) {
+            Set<PropertyKey> dependents = macroDependents.get(pending.pop());
+            if (dependents != null) {
+                for (PropertyKey dependent : dependents) {
+                    if (affected.add(dependent) && seen.add(dependent.getKey())) {
+                        pending.push(dependent.getKey());
+                    }
+                }
+            }
         }
-        if (testValue == null) {
-            throw new IllegalArgumentException("testValue may not be null");
+        return affected;
+    }
+
+    /**
+     * Find the property a macro in the given namespace refers to, following
+     * the same rules as {@link #resolveMacros(PropertyKey, String, MacroTemplate)}
+     *
+     * @param namespace
+     * @param referencedKey
+     * @return The location of the referenced property or null if there is none
+     */
+    private PropertyKey locateMacroTarget(Namespace namespace, String referencedKey) {
+        switch (resolutionPolicy) {
+            case ALL_NAMESPACES:
+            case LAZY_ALL_NAMESPACES:
+                Namespace owner = findFirstNamespace(referencedKey, Collections.emptySet());
+                return owner == null ? null : new PropertyKey(owner, referencedKey);
+            case WITHIN_NAMESPACE:
+            case LAZY_WITHIN_NAMESPACE:
+                if (containsProperty(namespace, referencedKey)) {
+                    return new PropertyKey(namespace, referencedKey);
+                }
+                return null;
+            default:
+                return null;
         }
+    }
 
-        ResolutionResult resolutionResult = new ResolutionResult();
+    /**
+     * Re-resolve the macros of all properties which depend on the given
+     * (changed) keys. Properties are resolved such that the properties they
+     * refer to are always resolved first, so that chains of macros are
+     * resolved completely in one pass. Properties which are part of a circular
+     * reference are left unresolved
+     *
+     * @param changedKeys
+     */
+    private void backwardResolveMacros(Collection<String> changedKeys) {
+        backwardResolveMacros(changedKeys, Collections.emptySet(), null);
+    }
 
-        StringBuffer sb = new StringBuffer(50);
-        macroMatcher.reset(testValue);
-        while (macroMatcher.find()) {
-            resolutionResult.setFoundReplacement(true);
-
-            String referencedKey = macroMatcher.group(1);
-            switch (resolutionPolicy) {
-                case ALL_NAMESPACES:
-
-                    boolean found = false;
-                    for (Namespace ns : namespaceData.keySet()) {
-                        if (containsProperty(ns, referencedKey)) {
-                            macroMatcher.appendReplacement(sb, getProperty(ns, referencedKey));
-                            found = true;
-                            break;
-                        }
+    /**
+     * Re-resolve the macros of all properties which depend on the given
+     * (changed) keys plus the additional properties provided
+     *
+     * @param changedKeys
+     * @param additionalProperties Properties which need to be resolved as
+     * well, even if they do not depend on the changed keys
+     * @param cycles If not null, receives the chains of keys of the circular
+     * references found. The properties involved and the properties referencing
+     * them are left unresolved
+     */
+    private void backwardResolveMacros(Collection<String> changedKeys, Collection<PropertyKey> additionalProperties, List<String> cycles) {
+        PropertyStatistics propertyStatistics = statistics;
+        long start = propertyStatistics == null ? 0 : System.nanoTime();
+        try {
+            Set<PropertyKey> affected;
+            if (macroIndexValid) {
+                affected = collectDependents(changedKeys);
+                for (PropertyKey propertyKey : additionalProperties) {
+                    if (macroTemplates.containsKey(propertyKey)) {
+                        affected.add(propertyKey);
                     }
-                    break;   // No fall-through required as we have convered all namespaces
+                }
+            } else {
+                rebuildMacroIndex();
+                affected = new TreeSet<>(macroTemplates.keySet());
+            }
+            if (affected.isEmpty()) {
+                return;
+            }
 
-                case WITHIN_NAMESPACE:
+            Set<PropertyKey> cyclic = new HashSet<>();
+            for (PropertyKey propertyKey : orderForResolution(affected, cyclic, cycles)) {
 
-                    if (containsProperty(namespace, referencedKey)) {
-                        macroMatcher.appendReplacement(sb, getProperty(namespace, referencedKey));
+                //.... When reporting cycles (bulk loads), properties referencing a circular reference keep their
+                //.... stored value as well, so that e. g. a copy of an instance gets exactly the same values
+                if (cycles != null && !cyclic.isEmpty() && !Collections.disjoint(getMacroTargets(propertyKey), cyclic)) {
+                    cyclic.add(propertyKey);
+                }
+                if (!cyclic.contains(propertyKey)) {
+                    ResolutionResult resolutionResult = resolveMacros(propertyKey, namespaceData.get(propertyKey.getNamespace()).get(propertyKey.getKey()), macroTemplates.get(propertyKey));
+                    if (resolutionResult.foundReplacement()) {
+                        storeValue(propertyKey, resolutionResult.getValue(), compileMacros(resolutionResult.getValue()));
                     }
-                    break;
+                }
+            }
+        } finally {
+            if (propertyStatistics != null) {
+                propertyStatistics.recordBackwardResolution(System.nanoTime() - start);
             }
         }
-        macroMatcher.appendTail(sb);
-
-        resolutionResult.setValue(sb.toString());
+    }
 
-        return resolutionResult;
+    /**
+     * Sort the given properties topologically, i. e. each property comes after
+     * all the properties it references through its macros
+     *
+     * @param affected
+     * @param cyclic Receives all properties which are part of a circular
+     * reference
+     * @param cycles If not null, receives the chains of keys of the circular
+     * references
+     * @return
+     */
+    private List<PropertyKey> orderForResolution(Set<PropertyKey> affected, Set<PropertyKey> cyclic, List<String> cycles) {
+        return orderForResolution(affected, affected::contains, this::getMacroTargets, cyclic, cycles);
     }
 
     /**
+     * Sort the given properties and the properties they reference topologically
      *
+     * @param roots
+     * @param include Selects the referenced properties which need to be
+     * ordered as well
+     * @param targetsOf Yields the properties referenced by a property
+     * @param cyclic Receives all properties which are part of a circular
+     * reference
+     * @param cycles If not null, receives the chains of keys of the circular
+     * references
      * @return
      */
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder(300);
-        for (Namespace namespace : namespaceData.keySet()) {
-            boolean isDefault = namespace.equals(DEFAULT_NAMESPACE);
-            for (String key : getProperties(namespace).keySet()) {
-                if (isDefault) {
-                    sb.append("(): ");
-                    sb.append(key);
-                    sb.append(" - ");
-                    sb.append(getProperty(namespace, key));
-                    sb.append("\n");
+    private List<PropertyKey> orderForResolution(Collection<PropertyKey> roots, Predicate<PropertyKey> include, Function<PropertyKey, List<PropertyKey>> targetsOf, Set<PropertyKey> cyclic, List<String> cycles) {
+        List<PropertyKey> order = new ArrayList<>(roots.size());
+        Set<PropertyKey> done = new HashSet<>();
+        Set<PropertyKey> onPath = new HashSet<>();
+        Deque<PropertyKey> path = new ArrayDeque<>();
+        Deque<Iterator<PropertyKey>> pathTargets = new ArrayDeque<>();
+
+        for (PropertyKey root : roots) {
+            if (done.contains(root)) {
+                continue;
+            }
+            path.push(root);
+            onPath.add(root);
+            pathTargets.push(targetsOf.apply(root).iterator());
+
+            //.... Iterative depth-first traversal so that long chains do not exhaust the stack
+            while (!path.isEmpty()) {
+                Iterator<PropertyKey> targets = pathTargets.peek();
+                if (targets.hasNext()) {
+                    PropertyKey target = targets.next();
+                    if (!include.test(target) || done.contains(target)) {
+                        continue;
+                    }
+                    if (onPath.contains(target)) {
+                        List<PropertyKey> chain = new ArrayList<>();
+                        for (PropertyKey member : path) {
+                            chain.add(member);
+                            if (member.equals(target)) {
+                                break;
+                            }
+                        }
+                        cyclic.addAll(chain);
+                        if (cycles != null) {
+                            StringBuilder sb = new StringBuilder(100);
+                            for (int i = chain.size() - 1; i >= 0; i--) {
+                                sb.append(chain.get(i)).append(" -> ");
+                            }
+                            cycles.add(sb.append(target).toString());
+                        }
+                        continue;
+                    }
+                    path.push(target);
+                    onPath.add(target);
+                    pathTargets.push(targetsOf.apply(target).iterator());
                 } else {
-                    sb.append("(");
-                    sb.append(namespace);
-                    sb.append("): ");
-                    sb.append(key);
-                    sb.append(" - ");
-                    sb.append(getProperty(namespace, key));
-                    sb.append("\n");
+                    PropertyKey propertyKey = path.pop();
+                    pathTargets.pop();
+                    onPath.remove(propertyKey);
+                    done.add(propertyKey);
+                    order.add(propertyKey);
                 }
             }
         }
-        return sb.toString();
+        return order;
     }
 
     /**
-     * Currently we can not detect circular references, which is a stupid thing
-     * to do in the first place
+     *
+     * @param propertyKey
+     * @return The properties referenced by the unresolved macros of the given
+     * property
      */
-    private void backwardResolveMacros() {
-        for (Namespace namespace : namespaceData.keySet()) {
-            for (String key : namespaceData.get(namespace).keySet()) {
-                ResolutionResult resolutionResult = resolveMacros(namespace, namespaceData.get(namespace).get(key));
-                if (resolutionResult.foundReplacement()) {
-                    namespaceData.get(namespace).put(key, resolutionResult.getValue());
-                }
+    private List<PropertyKey> getMacroTargets(PropertyKey propertyKey) {
+        MacroTemplate template = macroTemplates.get(propertyKey);
+        if (template == null) {
+            return Collections.emptyList();
+        }
+        List<PropertyKey> targets = new ArrayList<>(template.getReferences().size());
+        for (String reference : template.getReferences()) {
+            PropertyKey target = locateMacroTarget(propertyKey.getNamespace(), reference);
+            if (target != null) {
+                targets.add(target);
             }
         }
+        return targets;
     }
 
     /**
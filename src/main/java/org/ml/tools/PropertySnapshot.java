@@ -0,0 +1,535 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.xml.stream.XMLStreamException;
+import org.ml.tools.logging.LoggerFactory;
+
+/**
+ * A compact binary snapshot of the resolved properties of a PropertyManager.
+ * Services can start from a snapshot of their XML configuration and rebuild it
+ * only when the XML file has changed (see
+ * {@link #loadOrBuild(Path, Path, Builder)}).
+ * <p>
+ * Layout (big endian): the magic bytes "LTPS", the format version (int) and
+ * the CRC32 (int) of everything that follows: the size (long), modification
+ * time (long) and SHA-256 hash (32 bytes) of the source file, the string table
+ * (varint count, then varint byte length and UTF-8 bytes of each string), the
+ * settings (resolution policy and macro pattern as string indices, overwrite
+ * flag as a byte) and the namespaces (varint count, then per namespace the
+ * string index of its name, the varint number of properties and the string
+ * indices of each key and value). Values are stored resolved, so no macros
+ * are resolved again when loading.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertySnapshot {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(PropertySnapshot.class.getName());
+    private static final byte[] MAGIC = {'L', 'T', 'P', 'S'};
+    public static final int FORMAT_VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + 4;
+    private static final int FINGERPRINT_LENGTH = 8 + 8 + HASH_LENGTH;
+
+    /**
+     * Creates a PropertyManager from the source file if there is no up to date
+     * snapshot
+     *
+     * @param <X>
+     */
+    public interface Builder<X extends Exception> {
+
+        /**
+         *
+         * @param sourceFile
+         * @return
+         * @throws X
+         * @throws IOException
+         */
+        PropertyManager build(Path sourceFile) throws X, IOException;
+    }
+
+    /**
+     * Size, modification time and hash of a source file
+     */
+    private static class Fingerprint {
+
+        private final long size;
+        private final long lastModified;
+        private byte[] hash;
+
+        /**
+         *
+         * @param size
+         * @param lastModified
+         * @param hash
+         */
+        private Fingerprint(long size, long lastModified, byte[] hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        /**
+         *
+         * @param file
+         * @return The fingerprint of the file, the hash is only computed on
+         * demand
+         * @throws IOException
+         */
+        private static Fingerprint of(Path file) throws IOException {
+            return new Fingerprint(Files.size(file), Files.getLastModifiedTime(file).toMillis(), null);
+        }
+
+        /**
+         *
+         * @param file
+         * @return
+         * @throws IOException
+         */
+        private byte[] getHash(Path file) throws IOException {
+            if (hash == null) {
+                hash = computeHash(file);
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Write a snapshot which is not tied to any source file
+     *
+     * @param propertyManager
+     * @param snapshotFile
+     * @throws IOException
+     */
+    public static void write(PropertyManager propertyManager, Path snapshotFile) throws IOException {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("snapshotFile may not be null");
+        }
+        write(propertyManager, snapshotFile, new Fingerprint(-1, -1, new byte[HASH_LENGTH]));
+    }
+
+    /**
+     * Write a snapshot of the properties created from the given source file
+     *
+     * @param propertyManager
+     * @param snapshotFile
+     * @param sourceFile
+     * @throws IOException
+     */
+    public static void write(PropertyManager propertyManager, Path snapshotFile, Path sourceFile) throws IOException {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("snapshotFile may not be null");
+        }
+        if (sourceFile == null) {
+            throw new IllegalArgumentException("sourceFile may not be null");
+        }
+        Fingerprint fingerprint = Fingerprint.of(sourceFile);
+        fingerprint.getHash(sourceFile);
+        write(propertyManager, snapshotFile, fingerprint);
+    }
+
+    /**
+     * Read a snapshot through a memory-mapped file
+     *
+     * @param snapshotFile
+     * @return A new PropertyManager with the properties and settings of the
+     * snapshot
+     * @throws IOException If the file is not a valid snapshot
+     */
+    public static PropertyManager read(Path snapshotFile) throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("snapshotFile may not be null");
+        }
+        ByteBuffer buffer = map(snapshotFile);
+        try {
+            checkHeader(buffer, snapshotFile);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(MAGIC.length + 4)) {
+                throw new IOException("Checksum mismatch in snapshot " + snapshotFile);
+            }
+            buffer.position(HEADER_LENGTH + FINGERPRINT_LENGTH);
+
+            //.... String table
+            String[] strings = new String[readVarint(buffer)];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarint(buffer);
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                }
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            //.... Settings
+            PropertyManager propertyManager = new PropertyManager();
+            propertyManager.setResolutionPolicy(PropertyManager.ResolutionPolicy.valueOf(strings[readVarint(buffer)]));
+            propertyManager.setMacroPattern(strings[readVarint(buffer)]);
+            propertyManager.setAvoidOverwrites(buffer.get() != 0);
+
+            //.... Properties
+            int namespaceCount = readVarint(buffer);
+            for (int i = 0; i < namespaceCount; i++) {
+                Namespace namespace = Namespace.of(strings[readVarint(buffer)]);
+                int size = readVarint(buffer);
+                Map<String, String> properties = new LinkedHashMap<>(2 * size);
+                for (int j = 0; j < size; j++) {
+                    properties.put(strings[readVarint(buffer)], strings[readVarint(buffer)]);
+                }
+                propertyManager.loadResolvedProperties(namespace, properties);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data at the end of snapshot " + snapshotFile);
+            }
+            return propertyManager;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Corrupt snapshot " + snapshotFile + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Check if the snapshot was written for the current contents of the
+     * source file. If the modification time of the source file has changed,
+     * its hash decides
+     *
+     * @param snapshotFile
+     * @param sourceFile
+     * @return
+     * @throws IOException
+     */
+    public static boolean isUpToDate(Path snapshotFile, Path sourceFile) throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("snapshotFile may not be null");
+        }
+        if (sourceFile == null) {
+            throw new IllegalArgumentException("sourceFile may not be null");
+        }
+        return isUpToDate(readFingerprint(snapshotFile), sourceFile, Fingerprint.of(sourceFile), true);
+    }
+
+    /**
+     * Read the snapshot for the source file if it is up to date. Otherwise
+     * create the PropertyManager using the builder and write a new snapshot.
+     * A snapshot which can not be read is replaced as well
+     *
+     * @param <X>
+     * @param sourceFile
+     * @param snapshotFile
+     * @param builder
+     * @return
+     * @throws IOException
+     * @throws X
+     */
+    public static <X extends Exception> PropertyManager loadOrBuild(Path sourceFile, Path snapshotFile, Builder<X> builder) throws IOException, X {
+        if (sourceFile == null) {
+            throw new IllegalArgumentException("sourceFile may not be null");
+        }
+        if (snapshotFile == null) {
+            throw new IllegalArgumentException("snapshotFile may not be null");
+        }
+        if (builder == null) {
+            throw new IllegalArgumentException("builder may not be null");
+        }
+
+        //.... Take the fingerprint before building so that a concurrent modification leads to a rebuild next time
+        Fingerprint fingerprint = Fingerprint.of(sourceFile);
+        if (Files.isRegularFile(snapshotFile)) {
+            try {
+                Fingerprint storedFingerprint = readFingerprint(snapshotFile);
+                if (isUpToDate(storedFingerprint, sourceFile, fingerprint, false)) {
+                    return read(snapshotFile);
+                }
+                if (isUpToDate(storedFingerprint, sourceFile, fingerprint, true)) {
+
+                    //.... Only touched: keep the contents, but record the new modification time
+                    PropertyManager propertyManager = read(snapshotFile);
+                    write(propertyManager, snapshotFile, fingerprint);
+                    return propertyManager;
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Ignoring snapshot {0}: {1}", new Object[]{snapshotFile, ex.getMessage()});
+            }
+        }
+        fingerprint.getHash(sourceFile);
+        PropertyManager propertyManager = builder.build(sourceFile);
+        write(propertyManager, snapshotFile, fingerprint);
+        return propertyManager;
+    }
+
+    /**
+     * Use the properties of the root element of the source file, see
+     * {@link StreamingPropertyLoader#createPropertyManager(java.io.File)}
+     *
+     * @param sourceFile
+     * @param snapshotFile
+     * @return
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public static PropertyManager loadOrBuild(Path sourceFile, Path snapshotFile) throws IOException, XMLStreamException {
+        return loadOrBuild(sourceFile, snapshotFile, file -> StreamingPropertyLoader.createPropertyManager(file.toFile()));
+    }
+
+    /**
+     *
+     * @param storedFingerprint
+     * @param sourceFile
+     * @param fingerprint
+     * @param compareHash
+     * @return
+     * @throws IOException
+     */
+    private static boolean isUpToDate(Fingerprint storedFingerprint, Path sourceFile, Fingerprint fingerprint, boolean compareHash) throws IOException {
+        if (storedFingerprint.size != fingerprint.size) {
+            return false;
+        }
+        if (storedFingerprint.lastModified == fingerprint.lastModified) {
+            return true;
+        }
+        return compareHash && Arrays.equals(storedFingerprint.hash, fingerprint.getHash(sourceFile));
+    }
+
+    /**
+     *
+     * @param propertyManager
+     * @param snapshotFile
+     * @param fingerprint
+     * @throws IOException
+     */
+    private static void write(PropertyManager propertyManager, Path snapshotFile, Fingerprint fingerprint) throws IOException {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+
+        //.... Settings and properties refer to the string table, which is written in front of them
+        writeVarint(data, indexOf(propertyManager.getResolutionPolicy().toString(), stringIndex, strings));
+        writeVarint(data, indexOf(propertyManager.getMacroPattern(), stringIndex, strings));
+        data.write(propertyManager.doesAvoidOverwrites() ? 1 : 0);
+        List<Namespace> namespaces = new ArrayList<>(propertyManager.getNamespaces());
+        writeVarint(data, namespaces.size());
+        for (Namespace namespace : namespaces) {
+            Map<String, String> properties = propertyManager.getProperties(namespace);
+            writeVarint(data, indexOf(namespace.toString(), stringIndex, strings));
+            writeVarint(data, properties.size());
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writeVarint(data, indexOf(entry.getKey(), stringIndex, strings));
+                writeVarint(data, indexOf(entry.getValue(), stringIndex, strings));
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(data.size() + 64 * strings.size() + FINGERPRINT_LENGTH);
+        ByteBuffer fingerprintBuffer = ByteBuffer.allocate(FINGERPRINT_LENGTH);
+        fingerprintBuffer.putLong(fingerprint.size).putLong(fingerprint.lastModified).put(fingerprint.hash);
+        body.write(fingerprintBuffer.array());
+        writeVarint(body, strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(body, bytes.length);
+            body.write(bytes);
+        }
+        data.writeTo(body);
+
+        byte[] bodyBytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).putInt(FORMAT_VERSION).putInt((int) crc.getValue());
+
+        //.... Write to a temporary file first so that readers never see a partial snapshot
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header.flip(), ByteBuffer.wrap(bodyBytes)};
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     *
+     * @param snapshotFile
+     * @return
+     * @throws IOException
+     */
+    private static Fingerprint readFingerprint(Path snapshotFile) throws IOException {
+        ByteBuffer buffer = map(snapshotFile);
+        checkHeader(buffer, snapshotFile);
+        if (buffer.remaining() < FINGERPRINT_LENGTH) {
+            throw new IOException("Corrupt snapshot " + snapshotFile);
+        }
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(hash);
+        return new Fingerprint(size, lastModified, hash);
+    }
+
+    /**
+     *
+     * @param snapshotFile
+     * @return
+     * @throws IOException
+     */
+    private static MappedByteBuffer map(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Check magic bytes and version and move to the first byte after the
+     * header
+     *
+     * @param buffer
+     * @param snapshotFile
+     * @throws IOException
+     */
+    private static void checkHeader(ByteBuffer buffer, Path snapshotFile) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException("Not a property snapshot: " + snapshotFile);
+        }
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a property snapshot: " + snapshotFile);
+            }
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version " + version + ": " + snapshotFile);
+        }
+        buffer.getInt();  // CRC
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static byte[] computeHash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] buffer = new byte[65536];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     *
+     * @param string
+     * @param stringIndex
+     * @param strings
+     * @return
+     */
+    private static int indexOf(String string, Map<String, Integer> stringIndex, List<String> strings) {
+        Integer index = stringIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndex.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    /**
+     *
+     * @param out
+     * @param value
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     *
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Invalid length in snapshot");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in snapshot");
+    }
+}
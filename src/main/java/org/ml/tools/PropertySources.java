@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.jdom2.Element;
+
+/**
+ * Factory methods for the common layers of a {@link LayeredPropertyManager}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertySources {
+
+    /**
+     *
+     */
+    private PropertySources() {
+    }
+
+    /**
+     * The system properties, with their keys used as they are
+     *
+     * @return
+     */
+    public static SnapshotPropertySource systemProperties() {
+        return systemProperties(IKeyMapper.IDENTITY);
+    }
+
+    /**
+     * The system properties. Call {@link SnapshotPropertySource#refresh()} to
+     * pick up properties set later on
+     *
+     * @param keyMapper
+     * @return
+     */
+    public static SnapshotPropertySource systemProperties(IKeyMapper keyMapper) {
+        return new SnapshotPropertySource(() -> {
+            Map<String, String> values = new HashMap<>();
+            for (String name : System.getProperties().stringPropertyNames()) {
+                values.put(name, System.getProperty(name));
+            }
+            return values;
+        }, keyMapper);
+    }
+
+    /**
+     * The environment variables, with the keys mapped by
+     * {@link IKeyMapper#ENVIRONMENT} ("db.url" is read from DB_URL)
+     *
+     * @return
+     */
+    public static SnapshotPropertySource environment() {
+        return environment(IKeyMapper.ENVIRONMENT);
+    }
+
+    /**
+     *
+     * @param keyMapper
+     * @return
+     */
+    public static SnapshotPropertySource environment(IKeyMapper keyMapper) {
+        return new SnapshotPropertySource(System::getenv, keyMapper);
+    }
+
+    /**
+     * The properties of an XML element (see
+     * {@link PropertyManager#setProperties(Element)}). The macros are left
+     * unresolved, so that the LayeredPropertyManager can resolve them across
+     * all layers
+     *
+     * @param element
+     * @return
+     */
+    public static IPropertySource fromXml(Element element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element may not be null");
+        }
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setResolutionPolicy(PropertyManager.ResolutionPolicy.NONE);
+        propertyManager.setProperties(element);
+        return of(propertyManager);
+    }
+
+    /**
+     * A live view of a PropertyManager, e. g. of the instance maintained by a
+     * {@link ReloadingPropertySource}. Macros should be left unresolved in the
+     * instance (ResolutionPolicy.NONE) to resolve them across all layers
+     *
+     * @param propertyManager
+     * @return
+     */
+    public static IPropertySource of(PropertyManager propertyManager) {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        return new IPropertySource() {
+
+            @Override
+            public String getProperty(Namespace namespace, String key) {
+                return propertyManager.getProperty(namespace, key);
+            }
+
+            @Override
+            public Collection<Namespace> getNamespaces() {
+                return propertyManager.getNamespaces();
+            }
+
+            @Override
+            public Set<String> getKeys(Namespace namespace) {
+                return propertyManager.getProperties(namespace).keySet();
+            }
+
+            @Override
+            public long getVersion() {
+                return propertyManager.getVersion();
+            }
+        };
+    }
+}
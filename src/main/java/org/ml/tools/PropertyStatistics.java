@@ -0,0 +1,427 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Access statistics of a PropertyManager, see
+ * {@link PropertyManager#enableStatistics()}. The counters are kept per
+ * property in striped LongAdders, so recording an access does not contend
+ * between threads. Reads include the lookups made while resolving macros, so
+ * a property which is only used through macros does not show up as unread.
+ * <p>
+ * Properties which do not exist are tracked individually only up to
+ * {@link #getMaxMissingKeys()} keys, so probing arbitrary keys does not grow
+ * the statistics without bounds. The accesses of any further missing keys are
+ * still included in the totals, but not in the per property rankings.
+ * <p>
+ * The statistics can be published as a JMX MBean with
+ * {@link #register(String)}.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertyStatistics implements PropertyStatisticsMBean {
+
+    public final static int DEFAULT_HOT_KEY_COUNT = 20;
+    public final static int DEFAULT_MAX_MISSING_KEYS = 1000;
+    public final static String OBJECT_NAME_DOMAIN = "org.ml.tools";
+    private final PropertyManager propertyManager;
+    private final Map<PropertyKey, Counters> counters = new ConcurrentHashMap<>();
+    private final Counters untracked = new Counters();
+    private final AtomicInteger missingKeys = new AtomicInteger();
+    private final LongAdder backwardResolutions = new LongAdder();
+    private final LongAdder backwardResolutionNanos = new LongAdder();
+    private volatile int hotKeyCount = DEFAULT_HOT_KEY_COUNT;
+    private volatile int maxMissingKeys = DEFAULT_MAX_MISSING_KEYS;
+    private ObjectName objectName = null;
+
+    /**
+     * The counters of one property
+     */
+    private static final class Counters {
+
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder defaults = new LongAdder();
+        private final LongAdder parseFailures = new LongAdder();
+        private final LongAdder macroResolutions = new LongAdder();
+    }
+
+    /**
+     *
+     * @param propertyManager The instance whose accesses are recorded
+     */
+    PropertyStatistics(PropertyManager propertyManager) {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        this.propertyManager = propertyManager;
+    }
+
+    /**
+     * The counters of a property. A property which may not exist only gets its
+     * own counters while the limit of missing keys has not been reached
+     *
+     * @param namespace
+     * @param key
+     * @param exists
+     * @return
+     */
+    private Counters getCounters(Namespace namespace, String key, boolean exists) {
+        PropertyKey propertyKey = new PropertyKey(namespace, key);
+        Counters propertyCounters = counters.get(propertyKey);
+        if (propertyCounters != null) {
+            return propertyCounters;
+        }
+        if (exists) {
+            return counters.computeIfAbsent(propertyKey, k -> new Counters());
+        }
+
+        //.... Reserve a slot first, so concurrent misses can not exceed the limit
+        if (missingKeys.incrementAndGet() > maxMissingKeys) {
+            missingKeys.decrementAndGet();
+            return untracked;
+        }
+        Counters newCounters = new Counters();
+        propertyCounters = counters.putIfAbsent(propertyKey, newCounters);
+        if (propertyCounters != null) {
+            missingKeys.decrementAndGet();
+            return propertyCounters;
+        }
+        return newCounters;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @param found
+     */
+    void recordRead(Namespace namespace, String key, boolean found) {
+        Counters propertyCounters = getCounters(namespace, key, found);
+        propertyCounters.reads.increment();
+        if (!found) {
+            propertyCounters.misses.increment();
+        }
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    void recordDefault(Namespace namespace, String key) {
+        getCounters(namespace, key, false).defaults.increment();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     */
+    void recordParseFailure(Namespace namespace, String key) {
+        getCounters(namespace, key, true).parseFailures.increment();
+    }
+
+    /**
+     *
+     * @param propertyKey
+     */
+    void recordMacroResolution(PropertyKey propertyKey) {
+        getCounters(propertyKey.getNamespace(), propertyKey.getKey(), true).macroResolutions.increment();
+    }
+
+    /**
+     *
+     * @param nanos
+     */
+    void recordBackwardResolution(long nanos) {
+        backwardResolutions.increment();
+        backwardResolutionNanos.add(nanos);
+    }
+
+    /**
+     *
+     * @param counter
+     * @return
+     */
+    private long sum(Function<Counters, LongAdder> counter) {
+        long sum = counter.apply(untracked).sum();
+        for (Counters propertyCounters : counters.values()) {
+            sum += counter.apply(propertyCounters).sum();
+        }
+        return sum;
+    }
+
+    /**
+     * The properties with a non-zero count, highest count first
+     *
+     * @param counter
+     * @param count The maximum number of properties returned
+     * @return
+     */
+    private String[] rank(Function<Counters, LongAdder> counter, int count) {
+        List<Map.Entry<PropertyKey, Long>> ranking = new ArrayList<>();
+        for (Map.Entry<PropertyKey, Counters> entry : counters.entrySet()) {
+            long sum = counter.apply(entry.getValue()).sum();
+            if (sum > 0) {
+                ranking.add(Map.entry(entry.getKey(), sum));
+            }
+        }
+        ranking.sort((e1, e2) -> e1.getValue().equals(e2.getValue()) ? e1.getKey().compareTo(e2.getKey()) : Long.compare(e2.getValue(), e1.getValue()));
+        String[] keys = new String[Math.min(count, ranking.size())];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ranking.get(i).getKey() + "=" + ranking.get(i).getValue();
+        }
+        return keys;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getReads() {
+        return sum(c -> c.reads);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getMisses() {
+        return sum(c -> c.misses);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getDefaults() {
+        return sum(c -> c.defaults);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getParseFailures() {
+        return sum(c -> c.parseFailures);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getMacroResolutions() {
+        return sum(c -> c.macroResolutions);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getBackwardResolutions() {
+        return backwardResolutions.sum();
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public double getBackwardResolutionMillis() {
+        return backwardResolutionNanos.sum() / 1e6;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public int getTrackedKeyCount() {
+        return counters.size();
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public int getHotKeyCount() {
+        return hotKeyCount;
+    }
+
+    /**
+     *
+     * @param hotKeyCount
+     */
+    @Override
+    public void setHotKeyCount(int hotKeyCount) {
+        if (hotKeyCount < 0) {
+            throw new IllegalArgumentException("hotKeyCount may not be negative");
+        }
+        this.hotKeyCount = hotKeyCount;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public int getMaxMissingKeys() {
+        return maxMissingKeys;
+    }
+
+    /**
+     *
+     * @param maxMissingKeys
+     */
+    @Override
+    public void setMaxMissingKeys(int maxMissingKeys) {
+        if (maxMissingKeys < 0) {
+            throw new IllegalArgumentException("maxMissingKeys may not be negative");
+        }
+        this.maxMissingKeys = maxMissingKeys;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String[] getHotKeys() {
+        return topKeys(hotKeyCount);
+    }
+
+    /**
+     *
+     * @param count
+     * @return
+     */
+    @Override
+    public String[] topKeys(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count may not be negative");
+        }
+        return rank(c -> c.reads, count);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String[] getUnreadKeys() {
+        List<String> keys = new ArrayList<>();
+        for (Namespace namespace : propertyManager.getNamespaces()) {
+            for (String key : propertyManager.getProperties(namespace).keySet()) {
+                PropertyKey propertyKey = new PropertyKey(namespace, key);
+                Counters propertyCounters = counters.get(propertyKey);
+                if (propertyCounters == null || propertyCounters.reads.sum() == 0) {
+                    keys.add(propertyKey.toString());
+                }
+            }
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public String[] getDefaultedKeys() {
+        return rank(c -> c.defaults, Integer.MAX_VALUE);
+    }
+
+    /**
+     *
+     */
+    @Override
+    public void reset() {
+        counters.clear();
+        missingKeys.set(0);
+        untracked.reads.reset();
+        untracked.misses.reset();
+        untracked.defaults.reset();
+        untracked.parseFailures.reset();
+        untracked.macroResolutions.reset();
+        backwardResolutions.reset();
+        backwardResolutionNanos.reset();
+    }
+
+    /**
+     * Register this instance with the platform MBean server under the name
+     * org.ml.tools:type=PropertyStatistics,name=&lt;name&gt;
+     *
+     * @param name
+     * @return The name the MBean has been registered with
+     * @throws JMException
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (name == null) {
+            throw new IllegalArgumentException("name may not be null");
+        }
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        ObjectName newObjectName = new ObjectName(OBJECT_NAME_DOMAIN + ":type=PropertyStatistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+        objectName = newObjectName;
+        return objectName;
+    }
+
+    /**
+     * Remove this instance from the platform MBean server, if it has been
+     * registered
+     *
+     * @throws JMException
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+/**
+ * The management interface of {@link PropertyStatistics}. Keys are reported as
+ * "key" for the default namespace and "namespace/key" otherwise, followed by
+ * the respective count.
+ *
+ * @author Dr. Matthias Laux
+ */
+public interface PropertyStatisticsMBean {
+
+    /**
+     *
+     * @return The number of reads of property values, including misses
+     */
+    long getReads();
+
+    /**
+     *
+     * @return The number of reads of properties which do not exist
+     */
+    long getMisses();
+
+    /**
+     *
+     * @return The number of calls of the typed getters which returned the
+     * default value
+     */
+    long getDefaults();
+
+    /**
+     *
+     * @return The number of calls of the typed getters for values which could
+     * not be parsed into the requested type
+     */
+    long getParseFailures();
+
+    /**
+     *
+     * @return The number of values whose macros have been resolved
+     */
+    long getMacroResolutions();
+
+    /**
+     *
+     * @return The number of passes resolving backward references
+     */
+    long getBackwardResolutions();
+
+    /**
+     *
+     * @return The total time spent resolving backward references
+     */
+    double getBackwardResolutionMillis();
+
+    /**
+     *
+     * @return The number of properties with at least one recorded access
+     */
+    int getTrackedKeyCount();
+
+    /**
+     *
+     * @return
+     */
+    int getHotKeyCount();
+
+    /**
+     *
+     * @param hotKeyCount
+     */
+    void setHotKeyCount(int hotKeyCount);
+
+    /**
+     *
+     * @return The maximum number of properties which do not exist and are
+     * tracked individually
+     */
+    int getMaxMissingKeys();
+
+    /**
+     *
+     * @param maxMissingKeys
+     */
+    void setMaxMissingKeys(int maxMissingKeys);
+
+    /**
+     *
+     * @return The most frequently read properties, see
+     * {@link #getHotKeyCount()}
+     */
+    String[] getHotKeys();
+
+    /**
+     *
+     * @return The existing properties which have never been read
+     */
+    String[] getUnreadKeys();
+
+    /**
+     *
+     * @return The properties for which default values have been returned,
+     * most frequent first
+     */
+    String[] getDefaultedKeys();
+
+    /**
+     *
+     * @param count
+     * @return The given number of most frequently read properties
+     */
+    String[] topKeys(int count);
+
+    /**
+     * Discard all counters
+     */
+    void reset();
+}
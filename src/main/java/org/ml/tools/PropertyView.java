@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+/**
+ * A view of the properties of one namespace whose keys are given by the
+ * constants of an enum, see {@link PropertyManager#bind(Namespace, Class)}.
+ * <p>
+ * The key of each constant is determined once when the view is created. The
+ * values are kept in an array indexed by the ordinal of the constants, so
+ * {@link #get(Enum)} is an array access. Whenever the underlying
+ * PropertyManager has been modified, the array is refreshed with the next
+ * access.
+ *
+ * @author Dr. Matthias Laux
+ * @param <E>
+ */
+public class PropertyView<E extends Enum<E>> {
+
+    private static final ClassValue<String[]> ENUM_KEYS = new ClassValue<String[]>() {
+        @Override
+        protected String[] computeValue(Class<?> enumClass) {
+            Object[] constants = enumClass.getEnumConstants();
+            String[] keys = new String[constants.length];
+            for (int i = 0; i < constants.length; i++) {
+                keys[i] = constants[i].toString();
+            }
+            return keys;
+        }
+    };
+
+    private final PropertyManager propertyManager;
+    private final Namespace namespace;
+    private final Class<E> enumClass;
+    private final String[] keys;
+    private volatile State state;
+
+    /**
+     * The values at a given version of the PropertyManager
+     */
+    private static final class State {
+
+        private final long version;
+        private final String[] values;
+        private final int firstMissing;
+
+        /**
+         *
+         * @param version
+         * @param values
+         */
+        State(long version, String[] values) {
+            this.version = version;
+            this.values = values;
+            int missing = -1;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    missing = i;
+                    break;
+                }
+            }
+            firstMissing = missing;
+        }
+    }
+
+    /**
+     *
+     * @param propertyManager
+     * @param namespace
+     * @param enumClass
+     */
+    PropertyView(PropertyManager propertyManager, Namespace namespace, Class<E> enumClass) {
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (enumClass == null) {
+            throw new IllegalArgumentException("enumClass may not be null");
+        }
+        this.propertyManager = propertyManager;
+        this.namespace = namespace;
+        this.enumClass = enumClass;
+        keys = getKeys(enumClass);
+        refresh();
+    }
+
+    /**
+     * The property keys for all constants of an enum, indexed by ordinal. The
+     * array is shared and must not be modified
+     *
+     * @param enumClass
+     * @return
+     */
+    static String[] getKeys(Class<?> enumClass) {
+        return ENUM_KEYS.get(enumClass);
+    }
+
+    /**
+     *
+     * @return
+     */
+    private State refresh() {
+        long version = propertyManager.getVersion();
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = propertyManager.getProperty(namespace, keys[i]);
+        }
+        State newState = new State(version, values);
+        state = newState;
+        return newState;
+    }
+
+    /**
+     *
+     * @return
+     */
+    private State currentState() {
+        State current = state;
+        if (current.version != propertyManager.getVersion()) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    /**
+     *
+     * @param key
+     * @return The value of the property or null if it does not exist
+     */
+    public String get(E key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        return currentState().values[key.ordinal()];
+    }
+
+    /**
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    public String getString(E key, String defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean contains(E key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Check that a property exists for every constant of the enum. The check
+     * is done once per modification of the PropertyManager
+     */
+    public void validateAll() {
+        State current = currentState();
+        if (current.firstMissing >= 0) {
+            if (namespace.equals(PropertyManager.DEFAULT_NAMESPACE)) {
+                throw new IllegalArgumentException("Missing property key '" + keys[current.firstMissing] + "' in default namespace");
+            } else {
+                throw new IllegalArgumentException("Missing property key '" + keys[current.firstMissing] + "' in namespace " + namespace);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return
+     */
+    public PropertyManager getPropertyManager() {
+        return propertyManager;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Namespace getNamespace() {
+        return namespace;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public Class<E> getEnumClass() {
+        return enumClass;
+    }
+}
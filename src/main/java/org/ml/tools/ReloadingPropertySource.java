@@ -0,0 +1,394 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.ml.tools.logging.LoggerFactory;
+
+/**
+ * Keeps a PropertyManager in sync with an XML configuration file and the files
+ * it includes through &lt;include&gt; elements (see
+ * {@link ToolBelt#resolveIncludes(Element)}).
+ * <p>
+ * Every file contributes the properties of its &lt;properties&gt; element
+ * (the root element itself for an included file whose root is a
+ * &lt;properties&gt; element), following the namespace rules of
+ * {@link PropertyManager#setProperties(Namespace, Element)}. The main file
+ * comes first and the included files follow in the order of their
+ * &lt;include&gt; elements; a later file overrides properties of an earlier
+ * one.
+ * <p>
+ * After {@link #start()}, the directories of all files are watched. Change
+ * events are debounced, then only the modified files are parsed again. The new
+ * state is compared with the current one and only the properties which have
+ * changed (plus the properties whose macros refer to them) are applied to the
+ * PropertyManager, in one bulk load. With a {@link ConcurrentPropertyManager}
+ * the update therefore becomes visible atomically. To be notified about
+ * reloads, register a listener with
+ * {@code getPropertyManager().addPropertyChangeListener(...)}; it receives
+ * one {@link PropertyChangeEvent} per reload.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class ReloadingPropertySource implements Closeable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ReloadingPropertySource.class.getName());
+    public final static long DEFAULT_DEBOUNCE_MILLIS = 500;
+    private final Path configFile;
+    private final PropertyManager propertyManager;
+    private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private List<Path> files = new ArrayList<>();                                       // Main file first, then the includes
+    private final Map<Path, Map<PropertyKey, String>> fileProperties = new HashMap<>();    // Raw values per file
+    private Map<PropertyKey, String> currentProperties = new LinkedHashMap<>();           // Merged raw values
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private Thread watcher;
+
+    /**
+     *
+     * @param configFile
+     * @param propertyManager The instance to keep in sync with the files
+     * @throws JDOMException
+     * @throws IOException
+     */
+    public ReloadingPropertySource(Path configFile, PropertyManager propertyManager) throws JDOMException, IOException {
+        if (configFile == null) {
+            throw new IllegalArgumentException("configFile may not be null");
+        }
+        if (propertyManager == null) {
+            throw new IllegalArgumentException("propertyManager may not be null");
+        }
+        this.configFile = configFile.toAbsolutePath().normalize();
+        this.propertyManager = propertyManager;
+        reload(Collections.singleton(this.configFile), true);
+    }
+
+    /**
+     * Load the files into a new {@link ConcurrentPropertyManager}
+     *
+     * @param configFile
+     * @throws JDOMException
+     * @throws IOException
+     */
+    public ReloadingPropertySource(Path configFile) throws JDOMException, IOException {
+        this(configFile, new ConcurrentPropertyManager());
+    }
+
+    /**
+     *
+     * @return
+     */
+    public PropertyManager getPropertyManager() {
+        return propertyManager;
+    }
+
+    /**
+     *
+     * @param debounceMillis The time to wait for further change events before
+     * the files are parsed again
+     */
+    public void setDebounceMillis(long debounceMillis) {
+        if (debounceMillis < 0) {
+            throw new IllegalArgumentException("debounceMillis may not be negative");
+        }
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     *
+     * @return The files currently loaded, the main file first
+     */
+    public synchronized List<Path> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Start watching the files for modifications
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        registerDirectories();
+        watcher = new Thread(this::watch, "ReloadingPropertySource-" + configFile.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stop watching the files
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            thread = watcher;
+            watcher = null;
+            if (watchService != null) {
+                watchService.close();
+                watchService = null;
+                watchedDirectories.clear();
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Make sure the directories of all current files are watched
+     *
+     * @throws IOException
+     */
+    private void registerDirectories() throws IOException {
+        if (watchService == null) {
+            return;
+        }
+        Set<Path> directories = new HashSet<>();
+        for (Path file : files) {
+            directories.add(file.getParent());
+        }
+        directories.removeAll(watchedDirectories.values());
+        for (Path directory : directories) {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, directory);
+        }
+    }
+
+    /**
+     * The body of the watcher thread
+     */
+    private void watch() {
+        WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changedFiles = new HashSet<>();
+                collectChanges(service.take(), changedFiles);
+
+                //.... Editors often write a file in several steps, so wait until things have calmed down
+                WatchKey key;
+                while ((key = service.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(key, changedFiles);
+                }
+                if (!changedFiles.isEmpty()) {
+                    try {
+                        reload(changedFiles, false);
+                    } catch (JDOMException | IOException | RuntimeException ex) {
+                        LOGGER.log(Level.WARNING, "Could not reload properties from {0}: {1}", new Object[]{changedFiles, ex.getMessage()});
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            //.... Closed
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @param changedFiles
+     */
+    private synchronized void collectChanges(WatchKey key, Set<Path> changedFiles) {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changedFiles.addAll(files);
+            } else if (directory != null) {
+                Path file = directory.resolve((Path) event.context());
+                if (files.contains(file)) {
+                    changedFiles.add(file);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Parse the given files again and apply the differences to the
+     * PropertyManager
+     *
+     * @param changedFiles
+     * @param initial
+     * @throws JDOMException
+     * @throws IOException
+     */
+    synchronized void reload(Collection<Path> changedFiles, boolean initial) throws JDOMException, IOException {
+        SAXBuilder builder = new SAXBuilder();
+        Map<Path, Map<PropertyKey, String>> parsed = new HashMap<>();
+
+        //.... The list of includes only changes with the main file
+        List<Path> newFiles = files;
+        if (changedFiles.contains(configFile)) {
+            Document document = builder.build(configFile.toFile());
+            newFiles = new ArrayList<>();
+            newFiles.add(configFile);
+            for (Element includeElement : document.getRootElement().getChildren(ToolBelt.XML.include.toString())) {
+                newFiles.add(Paths.get(includeElement.getTextTrim()).toAbsolutePath().normalize());
+            }
+            parsed.put(configFile, readProperties(document));
+        }
+        for (Path file : newFiles) {
+            if (!parsed.containsKey(file) && (changedFiles.contains(file) || !fileProperties.containsKey(file))) {
+                parsed.put(file, readProperties(builder.build(file.toFile())));
+            }
+        }
+
+        //.... All files could be parsed, so now we can switch to the new state
+        files = newFiles;
+        fileProperties.keySet().retainAll(newFiles);
+        fileProperties.putAll(parsed);
+        registerDirectories();
+
+        Map<PropertyKey, String> newProperties = new LinkedHashMap<>();
+        for (Path file : files) {
+            newProperties.putAll(fileProperties.get(file));
+        }
+        apply(newProperties, initial);
+    }
+
+    /**
+     *
+     * @param document
+     * @return The raw values of all properties in the document
+     */
+    private Map<PropertyKey, String> readProperties(Document document) {
+        Element element = document.getRootElement();
+        if (element.getName().equals(PropertyManager.XML.properties.toString())) {
+            element = new Element(ToolBelt.XML.include.toString());
+            element.addContent(document.detachRootElement());
+        }
+        PropertyManager rawManager = new PropertyManager();
+        rawManager.setResolutionPolicy(PropertyManager.ResolutionPolicy.NONE);
+        rawManager.setProperties(element);
+
+        Map<PropertyKey, String> properties = new LinkedHashMap<>();
+        for (Namespace namespace : rawManager.getNamespaces()) {
+            for (Map.Entry<String, String> entry : rawManager.getProperties(namespace).entrySet()) {
+                properties.put(new PropertyKey(namespace, entry.getKey()), entry.getValue());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Apply the differences between the current and the new state
+     *
+     * @param newProperties
+     * @param initial
+     */
+    private void apply(Map<PropertyKey, String> newProperties, boolean initial) {
+        Set<PropertyKey> removed = new HashSet<>(currentProperties.keySet());
+        removed.removeAll(newProperties.keySet());
+        Set<PropertyKey> changed = new HashSet<>();
+        Set<String> changedKeys = new HashSet<>();
+        for (Map.Entry<PropertyKey, String> entry : newProperties.entrySet()) {
+            if (!entry.getValue().equals(currentProperties.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+                changedKeys.add(entry.getKey().getKey());
+            }
+        }
+        for (PropertyKey propertyKey : removed) {
+            changedKeys.add(propertyKey.getKey());
+        }
+
+        //.... Properties whose macros refer to a changed key have to be resolved again from their raw value
+        if (!initial && !changedKeys.isEmpty()) {
+            Map<String, Set<PropertyKey>> dependents = new HashMap<>();
+            for (Map.Entry<PropertyKey, String> entry : newProperties.entrySet()) {
+                for (String reference : propertyManager.extractMacroReferences(entry.getValue())) {
+                    dependents.computeIfAbsent(reference, k -> new HashSet<>()).add(entry.getKey());
+                }
+            }
+            Deque<String> pending = new ArrayDeque<>(changedKeys);
+            while (!pending.isEmpty()) {
+                for (PropertyKey dependent : dependents.getOrDefault(pending.pop(), Collections.emptySet())) {
+                    if (changed.add(dependent) && changedKeys.add(dependent.getKey())) {
+                        pending.push(dependent.getKey());
+                    }
+                }
+            }
+        }
+
+        if (removed.isEmpty() && changed.isEmpty()) {
+            return;
+        }
+        propertyManager.beginBulk();
+        try {
+            for (PropertyKey propertyKey : removed) {
+                propertyManager.removeProperty(propertyKey.getNamespace(), propertyKey.getKey());
+            }
+            boolean avoidOverwrites = !initial && propertyManager.doesAvoidOverwrites();
+            for (Map.Entry<PropertyKey, String> entry : newProperties.entrySet()) {
+                if (changed.contains(entry.getKey())) {
+
+                    //.... Otherwise the manager would keep the old value, see PropertyManager.merge()
+                    if (avoidOverwrites) {
+                        propertyManager.removeProperty(entry.getKey().getNamespace(), entry.getKey().getKey());
+                    }
+                    propertyManager.setProperty(entry.getKey().getNamespace(), entry.getKey().getKey(), entry.getValue());
+                }
+            }
+        } finally {
+
+            //.... The PropertyManager notifies its listeners once for the whole bulk load
+            propertyManager.commitBulk();
+        }
+        currentProperties = newProperties;
+    }
+}
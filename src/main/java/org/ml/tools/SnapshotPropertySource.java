@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A property source backed by a map of external names to values, e. g. the
+ * system properties or the environment. The keys of the properties are
+ * translated with an {@link IKeyMapper}; since the mapping can not be
+ * inverted, the source only answers lookups and does not list its properties.
+ * The map is read once; {@link #refresh()} reads it again.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class SnapshotPropertySource implements IPropertySource {
+
+    private final Supplier<Map<String, String>> supplier;
+    private final IKeyMapper keyMapper;
+    private volatile Map<String, String> values;
+    private volatile long version = 0;
+
+    /**
+     *
+     * @param supplier Yields the current values by their external names
+     * @param keyMapper
+     */
+    public SnapshotPropertySource(Supplier<Map<String, String>> supplier, IKeyMapper keyMapper) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("supplier may not be null");
+        }
+        if (keyMapper == null) {
+            throw new IllegalArgumentException("keyMapper may not be null");
+        }
+        this.supplier = supplier;
+        this.keyMapper = keyMapper;
+        values = readValues();
+    }
+
+    /**
+     *
+     * @return
+     */
+    private Map<String, String> readValues() {
+        Map<String, String> currentValues = supplier.get();
+        if (currentValues == null) {
+            throw new IllegalStateException("supplier returned null");
+        }
+        return new HashMap<>(currentValues);
+    }
+
+    /**
+     * Read the values again. The version is only incremented if they have
+     * changed
+     *
+     * @return True if the values have changed
+     */
+    public synchronized boolean refresh() {
+        Map<String, String> currentValues = readValues();
+        if (currentValues.equals(values)) {
+            return false;
+        }
+        values = currentValues;
+        version++;
+        return true;
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param key
+     * @return
+     */
+    @Override
+    public String getProperty(Namespace namespace, String key) {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("key may not be null");
+        }
+        String name = keyMapper.map(namespace, key);
+        return name == null ? null : values.get(name);
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public Collection<Namespace> getNamespaces() {
+        return Collections.emptySet();
+    }
+
+    /**
+     *
+     * @param namespace
+     * @return
+     */
+    @Override
+    public Set<String> getKeys(Namespace namespace) {
+        return Collections.emptySet();
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Override
+    public long getVersion() {
+        return version;
+    }
+}
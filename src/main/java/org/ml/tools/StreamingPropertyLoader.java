@@ -0,0 +1,500 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.ml.tools.PropertyManager.XML;
+
+/**
+ * Creates PropertyManager instances directly from an XML stream, without
+ * building a JDOM tree first. The results are the same as with the
+ * corresponding methods taking the root {@link org.jdom2.Element} of the
+ * document: {@link PropertyManager#PropertyManager(Namespace, org.jdom2.Element)},
+ * {@link PropertyManager#createPropertyManagers(org.jdom2.Element)} and
+ * {@link PropertyManager#extractProperties(org.jdom2.Element)}.
+ * <p>
+ * Only the properties of a property set are buffered until the set can be
+ * created. A named property set is created as soon as the general
+ * (unnamed) set is known, i. e. right away if the general set comes first.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class StreamingPropertyLoader {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    /**
+     * The properties of one &lt;properties&gt; element in document order
+     */
+    private static class PropertyRecords {
+
+        private final List<Namespace> namespaces = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+
+        /**
+         *
+         * @param namespace
+         * @param key null if the name attribute is missing
+         * @param value
+         */
+        private void add(Namespace namespace, String key, String value) {
+            namespaces.add(namespace);
+            keys.add(key);
+            values.add(value);
+        }
+
+        /**
+         * Same as {@link PropertyManager#setProperties(Namespace, org.jdom2.Element)}
+         *
+         * @param propertyManager
+         */
+        private void applyTo(PropertyManager propertyManager) {
+            propertyManager.beginBulk();
+            try {
+                for (int i = 0; i < keys.size(); i++) {
+                    if (keys.get(i) == null) {
+                        throw new IllegalArgumentException("Missing property attribute: " + XML.name.toString());
+                    }
+                    propertyManager.setProperty(namespaces.get(i), keys.get(i), values.get(i));
+                }
+            } finally {
+                propertyManager.commitBulk();
+            }
+        }
+    }
+
+    /**
+     * A named property set waiting for the general property set
+     */
+    private static class PendingPropertySet {
+
+        private final String name;
+        private final String parentName;
+        private final String ignoreNamespace;
+        private final PropertyRecords records;
+
+        /**
+         *
+         * @param name
+         * @param parentName
+         * @param ignoreNamespace
+         * @param records
+         */
+        private PendingPropertySet(String name, String parentName, String ignoreNamespace, PropertyRecords records) {
+            this.name = name;
+            this.parentName = parentName;
+            this.ignoreNamespace = ignoreNamespace;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Create an instance from the properties of the root element and add them
+     * to the default namespace
+     *
+     * @param inputStream
+     * @return
+     * @throws XMLStreamException
+     */
+    public static PropertyManager createPropertyManager(InputStream inputStream) throws XMLStreamException {
+        return createPropertyManager(PropertyManager.DEFAULT_NAMESPACE, inputStream);
+    }
+
+    /**
+     * Create an instance from the properties of the root element and add them
+     * to the namespace provided; the actual namespace used may be overridden
+     * based on the rules described for
+     * {@link PropertyManager#setProperties(Namespace, org.jdom2.Element)}
+     *
+     * @param namespace
+     * @param inputStream
+     * @return
+     * @throws XMLStreamException
+     */
+    public static PropertyManager createPropertyManager(Namespace namespace, InputStream inputStream) throws XMLStreamException {
+        if (namespace == null) {
+            throw new IllegalArgumentException("namespace may not be null");
+        }
+        if (inputStream == null) {
+            throw new IllegalArgumentException("inputStream may not be null");
+        }
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            nextChildElement(reader);
+            PropertyManager propertyManager = new PropertyManager();
+            PropertyRecords records = readPropertiesChild(reader, namespace);
+            finish(reader);
+            records.applyTo(propertyManager);
+            return propertyManager;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static PropertyManager createPropertyManager(File file) throws XMLStreamException, IOException {
+        return createPropertyManager(PropertyManager.DEFAULT_NAMESPACE, file);
+    }
+
+    /**
+     *
+     * @param namespace
+     * @param file
+     * @return
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static PropertyManager createPropertyManager(Namespace namespace, File file) throws XMLStreamException, IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file may not be null");
+        }
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            return createPropertyManager(namespace, inputStream);
+        }
+    }
+
+    /**
+     * Same as {@link PropertyManager#createPropertyManagers(org.jdom2.Element)}
+     * for the root element of the document
+     *
+     * @param inputStream
+     * @return
+     * @throws XMLStreamException
+     */
+    public static Map<String, PropertyManager> createPropertyManagers(InputStream inputStream) throws XMLStreamException {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("inputStream may not be null");
+        }
+        Map<String, PropertyManager> propertyManagers = new HashMap<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            nextChildElement(reader);
+
+            //.... Only the first propertySets element counts
+            while (nextChildElement(reader) && !isElement(reader, XML.propertySets)) {
+                skipElement(reader);
+            }
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                finish(reader);
+                return propertyManagers;
+            }
+
+            PropertyManager generalManager = null;
+            List<PendingPropertySet> pendingPropertySets = new ArrayList<>();
+            while (nextChildElement(reader)) {
+                if (!isElement(reader, XML.propertySet)) {
+                    skipElement(reader);
+                    continue;
+                }
+                String name = getAttributeValue(reader, XML.name);
+                if (name == null) {
+
+                    //.... Only the first properties element without a name attribute is propagated to all the named sets
+                    if (generalManager == null) {
+                        generalManager = new PropertyManager();
+                        readPropertiesChild(reader, PropertyManager.DEFAULT_NAMESPACE).applyTo(generalManager);
+                        for (PendingPropertySet pendingPropertySet : pendingPropertySets) {
+                            createNamedPropertyManager(propertyManagers, generalManager, pendingPropertySet);
+                        }
+                        pendingPropertySets = null;
+                    } else {
+                        skipElement(reader);
+                    }
+                } else {
+                    PendingPropertySet propertySet = new PendingPropertySet(name, getAttributeValue(reader, XML.parent),
+                            getAttributeValue(reader, XML.ignoreNamespace), readPropertiesChild(reader, PropertyManager.DEFAULT_NAMESPACE));
+                    if (generalManager == null) {
+                        pendingPropertySets.add(propertySet);
+                    } else {
+                        createNamedPropertyManager(propertyManagers, generalManager, propertySet);
+                    }
+                }
+            }
+
+            finish(reader);
+
+            //.... No generic properties to cascade to all new propertyManagers found
+            if (generalManager == null) {
+                generalManager = new PropertyManager();
+                for (PendingPropertySet pendingPropertySet : pendingPropertySets) {
+                    createNamedPropertyManager(propertyManagers, generalManager, pendingPropertySet);
+                }
+            }
+            return propertyManagers;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public static Map<String, PropertyManager> createPropertyManagers(File file) throws XMLStreamException, IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file may not be null");
+        }
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            return createPropertyManagers(inputStream);
+        }
+    }
+
+    /**
+     * Same as {@link PropertyManager#extractProperties(org.jdom2.Element)} for
+     * the root element of the document
+     *
+     * @param inputStream
+     * @return
+     * @throws XMLStreamException
+     */
+    public static Map<String, String> extractProperties(InputStream inputStream) throws XMLStreamException {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("inputStream may not be null");
+        }
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            nextChildElement(reader);
+            while (nextChildElement(reader) && !isElement(reader, XML.properties)) {
+                skipElement(reader);
+            }
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                throw new IllegalArgumentException("element does not contain child: " + XML.properties.toString());
+            }
+            PropertyRecords records = readProperties(reader, PropertyManager.DEFAULT_NAMESPACE);
+            finish(reader);
+            Map<String, String> p = new HashMap<>();
+            for (int i = 0; i < records.keys.size(); i++) {
+                p.put(records.keys.get(i), records.values.get(i));
+            }
+            return p;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     *
+     * @param propertyManagers
+     * @param generalManager
+     * @param propertySet
+     */
+    private static void createNamedPropertyManager(Map<String, PropertyManager> propertyManagers, PropertyManager generalManager, PendingPropertySet propertySet) {
+        PropertyManager namedManager = PropertyManager.createNamedPropertyManager(propertyManagers, generalManager,
+                propertySet.parentName, propertySet.ignoreNamespace, propertySet.records::applyTo);
+        propertyManagers.put(propertySet.name.trim(), namedManager);
+    }
+
+    /**
+     * Read the first &lt;properties&gt; child of the current element and skip
+     * everything else up to the end of the current element
+     *
+     * @param reader Positioned at the start of the element
+     * @param namespace
+     * @return
+     * @throws XMLStreamException
+     */
+    private static PropertyRecords readPropertiesChild(XMLStreamReader reader, Namespace namespace) throws XMLStreamException {
+        PropertyRecords records = null;
+        while (nextChildElement(reader)) {
+            if (records == null && isElement(reader, XML.properties)) {
+                records = readProperties(reader, namespace);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return records == null ? new PropertyRecords() : records;
+    }
+
+    /**
+     * Apply the namespace rules of
+     * {@link PropertyManager#setProperties(Namespace, org.jdom2.Element)}
+     *
+     * @param reader Positioned at the start of the &lt;properties&gt; element
+     * @param namespace
+     * @return
+     * @throws XMLStreamException
+     */
+    private static PropertyRecords readProperties(XMLStreamReader reader, Namespace namespace) throws XMLStreamException {
+        PropertyRecords records = new PropertyRecords();
+
+        //.... Check if there is a namespace attribute at the properties level
+        String topNamespace = getAttributeValue(reader, XML.namespace);
+        if (topNamespace != null) {
+            namespace = Namespace.of(topNamespace);
+        }
+        Map<String, Namespace> namespaces = new HashMap<>();
+        while (nextChildElement(reader)) {
+            if (!isElement(reader, XML.property)) {
+                skipElement(reader);
+                continue;
+            }
+            Namespace actualNamespace = namespace;
+            String propertyNamespace = getAttributeValue(reader, XML.namespace);
+            if (propertyNamespace != null) {
+                actualNamespace = namespaces.computeIfAbsent(propertyNamespace, Namespace::of);
+            }
+            String key = getAttributeValue(reader, XML.name);
+            records.add(actualNamespace, key, readTextTrim(reader));
+        }
+        return records;
+    }
+
+    /**
+     * Collect the text directly contained in the current element (like
+     * {@link org.jdom2.Element#getTextTrim()}) and move to its end
+     *
+     * @param reader
+     * @return
+     * @throws XMLStreamException
+     */
+    private static String readTextTrim(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        String text = "";
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (sb != null) {
+                        sb.append(reader.getText());
+                    } else if (text.isEmpty()) {
+                        text = reader.getText();
+                    } else {
+                        sb = new StringBuilder(text).append(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    skipElement(reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return (sb == null ? text : sb.toString()).trim();
+            }
+        }
+        throw new XMLStreamException("Unexpected end of document");
+    }
+
+    /**
+     * Move to the start of the next child element of the current element
+     *
+     * @param reader
+     * @return false if the end of the current element has been reached instead
+     * @throws XMLStreamException
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                case XMLStreamConstants.END_DOCUMENT:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the rest of the document so that it is checked for errors just as
+     * with a JDOM tree
+     *
+     * @param reader
+     * @throws XMLStreamException
+     */
+    private static void finish(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            reader.next();
+        }
+    }
+
+    /**
+     * Move to the end of the current element
+     *
+     * @param reader Positioned at the start of the element
+     * @throws XMLStreamException
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Elements in a namespace do not match, as with
+     * {@link org.jdom2.Element#getChild(String)}
+     *
+     * @param reader
+     * @param name
+     * @return
+     */
+    private static boolean isElement(XMLStreamReader reader, XML name) {
+        String uri = reader.getNamespaceURI();
+        return (uri == null || uri.isEmpty()) && reader.getLocalName().equals(name.toString());
+    }
+
+    /**
+     *
+     * @param reader
+     * @param name
+     * @return The value of the attribute without namespace or null
+     */
+    private static String getAttributeValue(XMLStreamReader reader, XML name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String uri = reader.getAttributeNamespace(i);
+            if ((uri == null || uri.isEmpty()) && reader.getAttributeLocalName(i).equals(name.toString())) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
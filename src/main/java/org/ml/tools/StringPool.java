@@ -0,0 +1,307 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of canonical string instances for the keys, values and namespace ids
+ * of the PropertyManagers. Instances created from the same configuration
+ * (named property sets, copies, overlays) then share one instance of each
+ * string instead of holding their own duplicates. The pool only holds weak
+ * references, so strings no longer used by any instance are still collected.
+ * Long values are rarely shared and are therefore not pooled.
+ * <p>
+ * Pooling makes every write more expensive, so it is disabled by default.
+ * It pays off when many instances hold the same strings, e. g. a large number
+ * of named property sets or copies; enable it with {@link #setEnabled(boolean)}
+ * before these are created.
+ *
+ * @author Dr. Matthias Laux
+ */
+public final class StringPool {
+
+    public final static int DEFAULT_MAX_VALUE_LENGTH = 128;
+
+    //.... Estimated size of a String object and of the header of its byte array
+    private final static int STRING_OVERHEAD = 24 + 16;
+
+    //.... The entries are found with a Probe, so that lookups do not have to create a weak reference
+    private static final ConcurrentHashMap<Object, Entry> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<String> QUEUE = new ReferenceQueue<>();
+    private static volatile boolean enabled = false;
+    private static volatile int maxValueLength = DEFAULT_MAX_VALUE_LENGTH;
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder deduplications = new LongAdder();
+    private static final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * A pooled string, equal to the other entries and probes for an equal
+     * string as long as it has not been collected
+     */
+    private static final class Entry extends WeakReference<String> {
+
+        private final int hash;
+
+        /**
+         *
+         * @param string
+         */
+        private Entry(String string) {
+            super(string, QUEUE);
+            hash = string.hashCode();
+        }
+
+        /**
+         *
+         * @return
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         *
+         * @param object
+         * @return
+         */
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof Entry)) {
+                return false;
+            }
+            String string = get();
+            return string != null && string.equals(((Entry) object).get());
+        }
+    }
+
+    /**
+     * The key for a lookup
+     */
+    private static final class Probe {
+
+        private final String string;
+
+        /**
+         *
+         * @param string
+         */
+        private Probe(String string) {
+            this.string = string;
+        }
+
+        /**
+         *
+         * @return
+         */
+        @Override
+        public int hashCode() {
+            return string.hashCode();
+        }
+
+        /**
+         *
+         * @param object
+         * @return
+         */
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Entry && string.equals(((Entry) object).get());
+        }
+    }
+
+    /**
+     *
+     */
+    private StringPool() {
+    }
+
+    /**
+     * Get the canonical instance of a string
+     *
+     * @param string
+     * @return The pooled instance equal to the string, or the string itself if
+     * it is the first of its kind or pooling is disabled
+     */
+    public static String intern(String string) {
+        if (string == null) {
+            throw new IllegalArgumentException("string may not be null");
+        }
+        return enabled ? pool(string) : string;
+    }
+
+    /**
+     * Like {@link #intern(String)}, but regardless of whether pooling is
+     * enabled. This is meant for long-lived strings such as the keys of a
+     * frozen PropertyManager
+     *
+     * @param string
+     * @return
+     */
+    static String internAlways(String string) {
+        if (string == null) {
+            throw new IllegalArgumentException("string may not be null");
+        }
+        return pool(string);
+    }
+
+    /**
+     *
+     * @param string
+     * @return The pooled instance equal to the string
+     */
+    private static String pool(String string) {
+        requests.increment();
+        Entry entry = POOL.get(new Probe(string));
+        String pooled = entry == null ? null : entry.get();
+        if (pooled == null) {
+            expungeCollectedEntries();
+            Entry newEntry = new Entry(string);
+            do {
+                entry = POOL.putIfAbsent(newEntry, newEntry);
+                pooled = entry == null ? string : entry.get();
+                if (pooled == null) {
+                    POOL.remove(entry, entry);
+                }
+            } while (pooled == null);
+        }
+        if (pooled != string) {
+            deduplications.increment();
+            savedBytes.add(STRING_OVERHEAD + string.length());
+        }
+        return pooled;
+    }
+
+    /**
+     * Remove the entries whose strings have been collected
+     */
+    private static void expungeCollectedEntries() {
+        Reference<? extends String> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            POOL.remove(reference, reference);
+        }
+    }
+
+    /**
+     * Like {@link #intern(String)}, but values longer than the maximum value
+     * length are returned as they are
+     *
+     * @param value
+     * @return
+     */
+    static String internValue(String value) {
+        return value.length() > maxValueLength ? value : intern(value);
+    }
+
+    /**
+     * Pooling is disabled by default. Disabling it does not affect the strings
+     * which have already been pooled
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        StringPool.enabled = enabled;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     *
+     * @param maxValueLength The maximum length of the values to pool
+     */
+    public static void setMaxValueLength(int maxValueLength) {
+        if (maxValueLength < 0) {
+            throw new IllegalArgumentException("maxValueLength may not be negative");
+        }
+        StringPool.maxValueLength = maxValueLength;
+    }
+
+    /**
+     *
+     * @return The number of distinct strings currently in the pool
+     */
+    public static int size() {
+        expungeCollectedEntries();
+        return POOL.size();
+    }
+
+    /**
+     *
+     * @return The number of strings passed to the pool
+     */
+    public static long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     *
+     * @return The number of duplicates replaced by a pooled instance
+     */
+    public static long getDeduplications() {
+        return deduplications.sum();
+    }
+
+    /**
+     * An estimate of the memory taken by the duplicates replaced by a pooled
+     * instance (assuming one byte per character), i. e. the memory which can be
+     * reclaimed once the duplicates are no longer referenced elsewhere
+     *
+     * @return
+     */
+    public static long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * Reset the counters (the pool itself is kept)
+     */
+    public static void resetStatistics() {
+        requests.reset();
+        deduplications.reset();
+        savedBytes.reset();
+    }
+
+    /**
+     *
+     * @return A summary of the pool and the memory saved
+     */
+    public static String getDiagnostics() {
+        return "StringPool: " + size() + " strings, " + getRequests() + " requests, " + getDeduplications()
+                + " duplicates replaced, about " + getSavedBytes() + " bytes saved" + (enabled ? "" : " (disabled)");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache for parsed property values, used by the typed getters of
+ * PropertyManager. For each property, the result of parsing its value into a
+ * given type is kept, including the fact that the property is missing or can
+ * not be parsed into that type. Entries are invalidated by the PropertyManager
+ * whenever the value of the property changes.
+ *
+ * @author Dr. Matthias Laux
+ */
+final class TypedValueCache {
+
+    /**
+     * Marker for a property which does not exist
+     */
+    static final Object MISSING = new Object();
+
+    /**
+     * Marker for a property value which can not be parsed into the requested
+     * type
+     */
+    static final Object INVALID = new Object();
+
+    private final ConcurrentHashMap<PropertyKey, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Converts a raw property value into a given type
+     */
+    interface Parser {
+
+        /**
+         *
+         * @param value
+         * @return
+         * @throws Exception If the value can not be parsed
+         */
+        Object parse(String value) throws Exception;
+    }
+
+    /**
+     * The parsed values of one property, one per type, as an immutable list
+     * (usually a property is only requested as one type)
+     */
+    private static final class Entry {
+
+        private final Object type;
+        private final Object value;
+        private final Entry next;
+
+        /**
+         *
+         * @param type
+         * @param value
+         * @param next
+         */
+        Entry(Object type, Object value, Entry next) {
+            this.type = type;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @param type
+     * @return The cached value, {@link #MISSING}, {@link #INVALID} or null if
+     * nothing has been cached for this property and type yet
+     */
+    Object get(PropertyKey propertyKey, Object type) {
+        for (Entry entry = entries.get(propertyKey); entry != null; entry = entry.next) {
+            if (entry.type == type) {
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @param type
+     * @param value The parsed value, {@link #MISSING} or {@link #INVALID}
+     */
+    void put(PropertyKey propertyKey, Object type, Object value) {
+        entries.compute(propertyKey, (k, entry) -> new Entry(type, value, entry));
+    }
+
+    /**
+     *
+     * @param propertyKey
+     * @param type
+     * @param value The raw property value or null if the property does not
+     * exist
+     * @param parser
+     * @return The parsed value, {@link #MISSING} or {@link #INVALID}
+     */
+    Object parse(PropertyKey propertyKey, Object type, String value, Parser parser) {
+        Object parsed;
+        if (value == null) {
+            parsed = MISSING;
+        } else {
+            try {
+                parsed = parser.parse(value);
+            } catch (Exception ex) {
+                parsed = INVALID;
+            }
+        }
+        put(propertyKey, type, parsed);
+        return parsed;
+    }
+
+    /**
+     *
+     * @param propertyKey
+     */
+    void invalidate(PropertyKey propertyKey) {
+        entries.remove(propertyKey);
+    }
+
+    /**
+     *
+     */
+    void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.token;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A template parsed once into literal and token segments, which can then be
+ * rendered any number of times with different {@link ITokenResolver}s. The
+ * tokens and the handling of unresolved tokens are the same as in
+ * {@link TokenReplacingReader}: ${name} is replaced by the value of the
+ * resolver unless this is null, in which case the token is kept as it is.
+ * <p>
+ * Instances are immutable and thread-safe. Templates compiled from files are
+ * cached by path and modification time, see {@link #compile(Path, Charset)}.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class CompiledTokenTemplate {
+
+    private static final ConcurrentHashMap<Path, CompiledTokenTemplate> CACHE = new ConcurrentHashMap<>();
+
+    //.... literals[i] precedes tokens[i]; the last literal follows the last token
+    private final String[] literals;
+    private final String[] tokens;
+    private final int literalLength;
+    private final FileTime lastModified;
+    private final Charset charset;
+    private volatile EncodedLiterals encodedLiterals;
+
+    /**
+     * The literals encoded in the charset last used for rendering into a
+     * {@link ByteBuffer}
+     */
+    private static class EncodedLiterals {
+
+        private final Charset charset;
+        private final byte[][] literals;
+        private final int length;
+
+        /**
+         *
+         * @param charset
+         * @param literals
+         */
+        EncodedLiterals(Charset charset, String[] literals) {
+            this.charset = charset;
+            this.literals = new byte[literals.length][];
+            int n = 0;
+            for (int i = 0; i < literals.length; i++) {
+                this.literals[i] = literals[i].getBytes(charset);
+                n += this.literals[i].length;
+            }
+            this.length = n;
+        }
+    }
+
+    /**
+     *
+     * @param literals
+     * @param tokens
+     * @param lastModified
+     * @param charset
+     */
+    private CompiledTokenTemplate(List<String> literals, List<String> tokens, FileTime lastModified, Charset charset) {
+        this.literals = literals.toArray(new String[0]);
+        this.tokens = tokens.toArray(new String[0]);
+        int n = 0;
+        for (String literal : this.literals) {
+            n += literal.length();
+        }
+        this.literalLength = n;
+        this.lastModified = lastModified;
+        this.charset = charset;
+    }
+
+    /**
+     *
+     * @param source
+     * @return
+     */
+    public static CompiledTokenTemplate compile(CharSequence source) {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        return parse(source, null, null);
+    }
+
+    /**
+     *
+     * @param source The reader is read to its end, but not closed
+     * @return
+     * @throws IOException
+     */
+    public static CompiledTokenTemplate compile(Reader source) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        return parse(readFully(source), null, null);
+    }
+
+    /**
+     * Compile the template in the given file. Compiled templates are cached:
+     * the file is only read and parsed again if its modification time has
+     * changed or it is requested with a different charset
+     *
+     * @param path
+     * @param charset
+     * @return
+     * @throws IOException
+     */
+    public static CompiledTokenTemplate compile(Path path, Charset charset) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("path may not be null");
+        }
+        if (charset == null) {
+            throw new IllegalArgumentException("charset may not be null");
+        }
+        Path key = path.toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(key);
+        CompiledTokenTemplate template = CACHE.get(key);
+        if (template != null && template.lastModified.equals(lastModified) && template.charset.equals(charset)) {
+            return template;
+        }
+        try (Reader reader = Files.newBufferedReader(key, charset)) {
+            template = parse(readFully(reader), lastModified, charset);
+        }
+        CACHE.put(key, template);
+        return template;
+    }
+
+    /**
+     * Remove all templates compiled from files from the cache
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    private static StringBuilder readFully(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[TokenReplacingReader.DEFAULT_BUFFER_SIZE];
+        int n;
+        while ((n = reader.read(buffer)) >= 0) {
+            sb.append(buffer, 0, n);
+        }
+        return sb;
+    }
+
+    /**
+     *
+     * @param source
+     * @param lastModified
+     * @param charset
+     * @return
+     */
+    private static CompiledTokenTemplate parse(CharSequence source, FileTime lastModified, Charset charset) {
+        List<String> literals = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        int length = source.length();
+        int literalStart = 0;
+        int i = 0;
+        while (i < length) {
+            if (source.charAt(i) != '$' || i + 1 >= length || source.charAt(i + 1) != '{') {
+                i++;
+                continue;
+            }
+            int end = i + 2;
+            while (end < length && source.charAt(end) != '}') {
+                end++;
+            }
+
+            //.... An unterminated token at the end is a literal
+            if (end == length) {
+                break;
+            }
+            literals.add(source.subSequence(literalStart, i).toString());
+            tokens.add(source.subSequence(i + 2, end).toString());
+            literalStart = end + 1;
+            i = literalStart;
+        }
+        literals.add(source.subSequence(literalStart, length).toString());
+        return new CompiledTokenTemplate(literals, tokens, lastModified, charset);
+    }
+
+    /**
+     *
+     * @return The number of tokens in the template
+     */
+    public int getTokenCount() {
+        return tokens.length;
+    }
+
+    /**
+     *
+     * @return The total number of characters outside of the tokens
+     */
+    public int getLiteralLength() {
+        return literalLength;
+    }
+
+    /**
+     *
+     * @param resolver
+     * @return The values of the tokens, or the tokens themselves if they could
+     * not be resolved
+     */
+    private String[] resolve(ITokenResolver resolver) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver may not be null");
+        }
+        String[] values = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String value = resolver.resolveToken(tokens[i]);
+            values[i] = value == null ? "${" + tokens[i] + "}" : value;
+        }
+        return values;
+    }
+
+    /**
+     *
+     * @param values
+     * @return The length of the rendered template
+     */
+    private int getLength(String[] values) {
+        int n = literalLength;
+        for (String value : values) {
+            n += value.length();
+        }
+        return n;
+    }
+
+    /**
+     *
+     * @param resolver
+     * @return
+     */
+    public String render(ITokenResolver resolver) {
+        String[] values = resolve(resolver);
+        StringBuilder sb = new StringBuilder(getLength(values));
+        for (int i = 0; i < values.length; i++) {
+            sb.append(literals[i]).append(values[i]);
+        }
+        return sb.append(literals[values.length]).toString();
+    }
+
+    /**
+     *
+     * @param target
+     * @param resolver
+     * @throws IOException
+     */
+    public void render(Appendable target, ITokenResolver resolver) throws IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("target may not be null");
+        }
+        String[] values = resolve(resolver);
+        if (target instanceof StringBuilder) {
+            StringBuilder sb = (StringBuilder) target;
+            sb.ensureCapacity(sb.length() + getLength(values));
+        }
+        for (int i = 0; i < values.length; i++) {
+            target.append(literals[i]).append(values[i]);
+        }
+        target.append(literals[values.length]);
+    }
+
+    /**
+     *
+     * @param target
+     * @param resolver
+     * @throws IOException
+     */
+    public void render(Writer target, ITokenResolver resolver) throws IOException {
+        if (target == null) {
+            throw new IllegalArgumentException("target may not be null");
+        }
+        String[] values = resolve(resolver);
+        for (int i = 0; i < values.length; i++) {
+            target.write(literals[i]);
+            target.write(values[i]);
+        }
+        target.write(literals[values.length]);
+    }
+
+    /**
+     * Render into a new buffer of exactly the required size. The buffer is
+     * flipped and ready to be read
+     *
+     * @param resolver
+     * @param charset
+     * @return
+     */
+    public ByteBuffer render(ITokenResolver resolver, Charset charset) {
+        EncodedLiterals encoded = getEncodedLiterals(charset);
+        byte[][] values = encode(resolve(resolver), charset);
+        int n = encoded.length;
+        for (byte[] value : values) {
+            n += value.length;
+        }
+        ByteBuffer target = ByteBuffer.allocate(n);
+        put(target, encoded, values);
+        return target.flip();
+    }
+
+    /**
+     * Render into the given buffer, starting at its position
+     *
+     * @param target
+     * @param resolver
+     * @param charset
+     * @return The number of bytes written
+     * @throws BufferOverflowException If the remaining space in the
+     * buffer is not sufficient; nothing is written in this case
+     */
+    public int render(ByteBuffer target, ITokenResolver resolver, Charset charset) {
+        if (target == null) {
+            throw new IllegalArgumentException("target may not be null");
+        }
+        EncodedLiterals encoded = getEncodedLiterals(charset);
+        byte[][] values = encode(resolve(resolver), charset);
+        int n = encoded.length;
+        for (byte[] value : values) {
+            n += value.length;
+        }
+        if (n > target.remaining()) {
+            throw new BufferOverflowException();
+        }
+        put(target, encoded, values);
+        return n;
+    }
+
+    /**
+     *
+     * @param charset
+     * @return
+     */
+    private EncodedLiterals getEncodedLiterals(Charset charset) {
+        if (charset == null) {
+            throw new IllegalArgumentException("charset may not be null");
+        }
+        EncodedLiterals encoded = encodedLiterals;
+        if (encoded == null || !encoded.charset.equals(charset)) {
+            encoded = new EncodedLiterals(charset, literals);
+            encodedLiterals = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     *
+     * @param values
+     * @param charset
+     * @return
+     */
+    private static byte[][] encode(String[] values, Charset charset) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(charset);
+        }
+        return bytes;
+    }
+
+    /**
+     *
+     * @param target
+     * @param encoded
+     * @param values
+     */
+    private static void put(ByteBuffer target, EncodedLiterals encoded, byte[][] values) {
+        for (int i = 0; i < values.length; i++) {
+            target.put(encoded.literals[i]).put(values[i]);
+        }
+        target.put(encoded.literals[values.length]);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Token replacement between channels, for the charsets supported by
+ * {@link TokenReplacingInputStream}. The source file is scanned in blocks;
+ * the regions between the tokens are passed to the target with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so they
+ * are never copied through the heap for writing (the kernel copies them
+ * directly if the target is a file or socket). Only the token values are
+ * encoded and written from the heap.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class TokenReplacingChannels {
+
+    public final static int DEFAULT_BLOCK_SIZE = 65536;
+
+    /**
+     *
+     */
+    private TokenReplacingChannels() {
+    }
+
+    /**
+     * Copy the source from its current position to its end into the target,
+     * replacing the tokens ${name}. The position of the source is moved to its
+     * end
+     *
+     * @param source
+     * @param target
+     * @param resolver
+     * @param charset
+     * @return The number of bytes written to the target
+     * @throws IOException
+     */
+    public static long transfer(FileChannel source, WritableByteChannel target, ITokenResolver resolver, Charset charset) throws IOException {
+        return transfer(source, target, resolver, charset, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     *
+     * @param source
+     * @param target
+     * @param resolver
+     * @param charset
+     * @param blockSize The size of the blocks scanned for tokens
+     * @return The number of bytes written to the target
+     * @throws IOException
+     */
+    public static long transfer(FileChannel source, WritableByteChannel target, ITokenResolver resolver, Charset charset, int blockSize) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("target may not be null");
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver may not be null");
+        }
+        TokenReplacingInputStream.checkCharset(charset);
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+
+        //.... The source is scanned once; a token which spans blocks is carried over to the next block
+        long size = source.size();
+        long literalStart = source.position();
+        long blockStart = literalStart;
+        long tokenStart = -1;
+        boolean inTokenName = false;
+        long written = 0;
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        byte[] bytes = block.array();
+        ByteArrayOutputStream tokenName = new ByteArrayOutputStream();
+        while (blockStart < size) {
+            int n = readBlock(source, block, blockStart, size);
+            if (n == 0) {
+                break;
+            }
+            int i = 0;
+            while (i < n) {
+                if (inTokenName) {
+                    int end = i;
+                    while (end < n && bytes[end] != '}') {
+                        end++;
+                    }
+                    tokenName.write(bytes, i, end - i);
+                    if (end == n) {
+                        break;
+                    }
+                    inTokenName = false;
+                    String value = resolver.resolveToken(new String(tokenName.toByteArray(), charset));
+                    if (value != null) {
+                        written += transferFully(source, literalStart, tokenStart - literalStart, target);
+                        written += writeFully(target, ByteBuffer.wrap(value.getBytes(charset)));
+                        literalStart = blockStart + end + 1;
+                    }
+                    tokenStart = -1;
+                    i = end + 1;
+                } else if (tokenStart >= 0) {
+
+                    //.... A '$' which is not followed by '{' is a literal, but the next byte may start a token
+                    if (bytes[i] == '{') {
+                        inTokenName = true;
+                        tokenName.reset();
+                        i++;
+                    } else {
+                        tokenStart = -1;
+                    }
+                } else {
+                    while (i < n && bytes[i] != '$') {
+                        i++;
+                    }
+                    if (i < n) {
+                        tokenStart = blockStart + i;
+                        i++;
+                    }
+                }
+            }
+            blockStart += n;
+        }
+
+        //.... Whatever is left, including an unterminated token, is a literal
+        written += transferFully(source, literalStart, size - literalStart, target);
+        source.position(size);
+        return written;
+    }
+
+    /**
+     *
+     * @param source
+     * @param block
+     * @param start
+     * @param size
+     * @return The number of bytes read into the block
+     * @throws IOException
+     */
+    private static int readBlock(FileChannel source, ByteBuffer block, long start, long size) throws IOException {
+        block.clear();
+        block.limit((int) Math.min(block.capacity(), size - start));
+        while (block.hasRemaining()) {
+            if (source.read(block, start + block.position()) < 0) {
+                break;
+            }
+        }
+        return block.position();
+    }
+
+    /**
+     *
+     * @param source
+     * @param position
+     * @param count
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    private static long transferFully(FileChannel source, long position, long count, WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = source.transferTo(position + transferred, count - transferred, target);
+            if (n <= 0) {
+                throw new IOException("Could not transfer data from position " + (position + transferred));
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     *
+     * @param target
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    private static long writeFully(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += target.write(buffer);
+        }
+        return written;
+    }
+}
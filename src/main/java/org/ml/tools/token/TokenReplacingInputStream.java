@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.token;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The byte-oriented counterpart of {@link TokenReplacingReader}: replaces
+ * tokens ${name} in a stream of encoded text without decoding it. Only the
+ * token names are decoded and only the token values are encoded; all other
+ * bytes are copied as they are, in runs.
+ * <p>
+ * This requires a charset in which the bytes of '$', '{' and '}' stand for
+ * these characters only, i. e. UTF-8, US-ASCII or an ASCII-compatible
+ * single-byte charset such as ISO-8859-1.
+ *
+ * @author Dr. Matthias Laux
+ */
+public class TokenReplacingInputStream extends InputStream {
+
+    public final static int DEFAULT_BUFFER_SIZE = 8192;
+    private final InputStream source;
+    private final ITokenResolver tokenResolver;
+    private final Charset charset;
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfSource = false;
+    private byte[] tokenName = new byte[64];
+    private int tokenNameLength = 0;
+    private byte[] tokenValue;
+    private int tokenValueIndex = 0;
+
+    /**
+     *
+     * @param source
+     * @param resolver
+     * @param charset
+     */
+    public TokenReplacingInputStream(InputStream source, ITokenResolver resolver, Charset charset) {
+        this(source, resolver, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     *
+     * @param source
+     * @param resolver
+     * @param charset
+     * @param bufferSize The size of the blocks read from the source
+     */
+    public TokenReplacingInputStream(InputStream source, ITokenResolver resolver, Charset charset, int bufferSize) {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver may not be null");
+        }
+        checkCharset(charset);
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.source = source;
+        this.tokenResolver = resolver;
+        this.charset = charset;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     *
+     * @param charset
+     */
+    static void checkCharset(Charset charset) {
+        if (charset == null) {
+            throw new IllegalArgumentException("charset may not be null");
+        }
+        boolean supported = charset.equals(StandardCharsets.UTF_8)
+                || (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f && Arrays.equals("${}".getBytes(charset), new byte[]{'$', '{', '}'}));
+        if (!supported) {
+            throw new IllegalArgumentException("Charset is not supported for byte-level token replacement: " + charset);
+        }
+    }
+
+    /**
+     *
+     * @return False at the end of the source
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (endOfSource) {
+            return false;
+        }
+        int n;
+        do {
+            n = source.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            endOfSource = true;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Process the '$' at the current position, see
+     * {@link TokenReplacingReader}
+     *
+     * @throws IOException
+     */
+    private void readToken() throws IOException {
+        position++;
+        if ((position == limit && !fill()) || buffer[position] != '{') {
+            setTokenValue(new byte[]{'$'});
+            return;
+        }
+        position++;
+        tokenNameLength = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                setTokenValue(concat(new byte[]{'$', '{'}, tokenName, tokenNameLength, null));
+                return;
+            }
+            int end = position;
+            while (end < limit && buffer[end] != '}') {
+                end++;
+            }
+            appendTokenName(end);
+            if (end < limit) {
+                position = end + 1;
+                break;
+            }
+            position = end;
+        }
+        String value = tokenResolver.resolveToken(new String(tokenName, 0, tokenNameLength, charset));
+        setTokenValue(value == null ? concat(new byte[]{'$', '{'}, tokenName, tokenNameLength, new byte[]{'}'}) : value.getBytes(charset));
+    }
+
+    /**
+     *
+     * @param end
+     */
+    private void appendTokenName(int end) {
+        int n = end - position;
+        if (tokenNameLength + n > tokenName.length) {
+            tokenName = Arrays.copyOf(tokenName, Math.max(2 * tokenName.length, tokenNameLength + n));
+        }
+        System.arraycopy(buffer, position, tokenName, tokenNameLength, n);
+        tokenNameLength += n;
+    }
+
+    /**
+     *
+     * @param prefix
+     * @param bytes
+     * @param length
+     * @param suffix
+     * @return
+     */
+    private static byte[] concat(byte[] prefix, byte[] bytes, int length, byte[] suffix) {
+        int suffixLength = suffix == null ? 0 : suffix.length;
+        byte[] result = new byte[prefix.length + length + suffixLength];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(bytes, 0, result, prefix.length, length);
+        if (suffix != null) {
+            System.arraycopy(suffix, 0, result, prefix.length + length, suffixLength);
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param value
+     */
+    private void setTokenValue(byte[] value) {
+        tokenValue = value;
+        tokenValueIndex = 0;
+    }
+
+    /**
+     *
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int read() throws IOException {
+        if (tokenValue == null && position < limit && buffer[position] != '$') {
+            return buffer[position++] & 0xff;
+        }
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * Returns once the requested number of bytes has been read or the
+     * buffered block of the source has been used up
+     *
+     * @param b
+     * @param off
+     * @param len
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int bytesRead = 0;
+        while (bytesRead < len) {
+            if (tokenValue != null) {
+                int n = Math.min(tokenValue.length - tokenValueIndex, len - bytesRead);
+                System.arraycopy(tokenValue, tokenValueIndex, b, off + bytesRead, n);
+                bytesRead += n;
+                tokenValueIndex += n;
+                if (tokenValueIndex == tokenValue.length) {
+                    tokenValue = null;
+                }
+                continue;
+            }
+            if (position == limit) {
+                if (bytesRead > 0 || !fill()) {
+                    break;
+                }
+            }
+            int end = Math.min(limit, position + len - bytesRead);
+            int i = position;
+            while (i < end && buffer[i] != '$') {
+                i++;
+            }
+            if (i > position) {
+                System.arraycopy(buffer, position, b, off + bytesRead, i - position);
+                bytesRead += i - position;
+                position = i;
+            } else {
+                readToken();
+            }
+        }
+        return bytesRead == 0 ? -1 : bytesRead;
+    }
+
+    /**
+     *
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int available() throws IOException {
+        return (tokenValue == null ? 0 : tokenValue.length - tokenValueIndex) + (limit - position);
+    }
+
+    /**
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
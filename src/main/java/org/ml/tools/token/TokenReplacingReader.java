@@ -4,83 +4,134 @@
 package org.ml.tools.token;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.nio.CharBuffer;
 
 /**
- *
+ * A reader which replaces tokens ${name} in the source with the values
+ * provided by an {@link ITokenResolver}. Tokens the resolver does not know
+ * (null) are kept as they are; the values are not scanned for tokens again.
+ * <p>
+ * The source is read in blocks into an internal buffer. Runs of text without
+ * a '$' are copied in one go, and token values are copied in bulk, so reading
+ * through {@link #read(char[], int, int)} is about as fast as reading the
+ * source itself. Tokens may span the boundaries of the blocks.
  */
 public class TokenReplacingReader extends Reader {
 
-    protected PushbackReader pushbackReader;
+    public final static int DEFAULT_BUFFER_SIZE = 8192;
+    protected Reader source;
     protected ITokenResolver tokenResolver;
     protected StringBuilder tokenNameBuffer = new StringBuilder();
     protected String tokenValue;
     protected int tokenValueIndex = 0;
+    private final char[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfSource = false;
 
     /**
      * @param source
      * @param resolver
      */
     public TokenReplacingReader(Reader source, ITokenResolver resolver) {
-        this.pushbackReader = new PushbackReader(source, 2);
+        this(source, resolver, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param source
+     * @param resolver
+     * @param bufferSize The size of the blocks read from the source
+     */
+    public TokenReplacingReader(Reader source, ITokenResolver resolver, int bufferSize) {
+        if (source == null) {
+            throw new IllegalArgumentException("source may not be null");
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver may not be null");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.source = source;
         this.tokenResolver = resolver;
+        this.buffer = new char[bufferSize];
     }
 
     /**
-     * @param target
-     * @return
+     * Read the next block of the source into the buffer
+     *
+     * @return False at the end of the source
      * @throws IOException
      */
-    @Override
-    public int read(CharBuffer target) {
-        throw new RuntimeException("Operation Not Supported");
+    private boolean fill() throws IOException {
+        if (endOfSource) {
+            return false;
+        }
+        int n;
+        do {
+            n = source.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            endOfSource = true;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
     }
 
     /**
-     * @return @throws IOException
+     * Process the '$' at the current position: either it starts a token, whose
+     * value is then pending, or it is pending as a plain character
+     *
+     * @throws IOException
      */
-    @Override
-    public int read() throws IOException {
-        if (this.tokenValue != null) {
-            if (this.tokenValueIndex < this.tokenValue.length()) {
-                return this.tokenValue.charAt(this.tokenValueIndex++);
+    private void readToken() throws IOException {
+        position++;
+        if ((position == limit && !fill()) || buffer[position] != '{') {
+            tokenValue = "$";
+            tokenValueIndex = 0;
+            return;
+        }
+        position++;
+        tokenNameBuffer.setLength(0);
+        while (true) {
+            if (position == limit && !fill()) {
+
+                //.... No closing brace up to the end of the source: keep the text as it is
+                tokenValue = "${" + tokenNameBuffer;
+                tokenValueIndex = 0;
+                return;
             }
-            if (this.tokenValueIndex == this.tokenValue.length()) {
-                this.tokenValue = null;
-                this.tokenValueIndex = 0;
+            int end = position;
+            while (end < limit && buffer[end] != '}') {
+                end++;
             }
+            tokenNameBuffer.append(buffer, position, end - position);
+            if (end < limit) {
+                position = end + 1;
+                break;
+            }
+            position = end;
         }
-
-        int data = this.pushbackReader.read();
-        if (data != '$') {
-            return data;
-        }
-
-        data = this.pushbackReader.read();
-        if (data != '{') {
-            this.pushbackReader.unread(data);
-            return '$';
-        }
-        this.tokenNameBuffer.delete(0, this.tokenNameBuffer.length());
-
-        data = this.pushbackReader.read();
-        while (data != '}') {
-            this.tokenNameBuffer.append((char) data);
-            data = this.pushbackReader.read();
+        String tokenName = tokenNameBuffer.toString();
+        tokenValue = tokenResolver.resolveToken(tokenName);
+        if (tokenValue == null) {
+            tokenValue = "${" + tokenName + "}";
         }
+        tokenValueIndex = 0;
+    }
 
-        this.tokenValue = this.tokenResolver.resolveToken(this.tokenNameBuffer.toString());
-
-        if (this.tokenValue == null) {
-            this.tokenValue = "${" + this.tokenNameBuffer.toString() + "}";
-        }
-        if (this.tokenValue.length() == 0) {
-            return read();
+    /**
+     * @return @throws IOException
+     */
+    @Override
+    public int read() throws IOException {
+        if (tokenValue == null && position < limit && buffer[position] != '$') {
+            return buffer[position++];
         }
-        return this.tokenValue.charAt(this.tokenValueIndex++);
-
+        char[] c = new char[1];
+        return read(c, 0, 1) < 0 ? -1 : c[0];
     }
 
     /**
@@ -96,6 +147,9 @@ public class TokenReplacingReader extends Reader {
     }
 
     /**
+     * Returns once the requested number of characters has been read or the
+     * buffered block of the source has been used up
+     *
      * @param cbuf
      * @param off
      * @param len
@@ -104,19 +158,46 @@ public class TokenReplacingReader extends Reader {
      */
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
         int charsRead = 0;
-        for (int i = 0; i < len; i++) {
-            int nextChar = read();
-            if (nextChar == -1) {
-                if (charsRead == 0) {
-                    charsRead = -1;
+        while (charsRead < len) {
+            if (tokenValue != null) {
+                int n = Math.min(tokenValue.length() - tokenValueIndex, len - charsRead);
+                tokenValue.getChars(tokenValueIndex, tokenValueIndex + n, cbuf, off + charsRead);
+                charsRead += n;
+                tokenValueIndex += n;
+                if (tokenValueIndex == tokenValue.length()) {
+                    tokenValue = null;
+                    tokenValueIndex = 0;
                 }
-                break;
+                continue;
+            }
+            if (position == limit) {
+
+                //.... Do not block for more input if there is something to return already
+                if (charsRead > 0 || !fill()) {
+                    break;
+                }
+            }
+            int end = Math.min(limit, position + len - charsRead);
+            int i = position;
+            while (i < end && buffer[i] != '$') {
+                i++;
+            }
+            if (i > position) {
+                System.arraycopy(buffer, position, cbuf, off + charsRead, i - position);
+                charsRead += i - position;
+                position = i;
+            } else {
+                readToken();
             }
-            charsRead = i + 1;
-            cbuf[off + i] = (char) nextChar;
         }
-        return charsRead;
+        return charsRead == 0 ? -1 : charsRead;
     }
 
     /**
@@ -124,7 +205,7 @@ public class TokenReplacingReader extends Reader {
      */
     @Override
     public void close() throws IOException {
-        this.pushbackReader.close();
+        this.source.close();
     }
 
     /**
@@ -142,7 +223,7 @@ public class TokenReplacingReader extends Reader {
      */
     @Override
     public boolean ready() throws IOException {
-        return this.pushbackReader.ready();
+        return this.tokenValue != null || this.position < this.limit || this.source.ready();
     }
 
     /**
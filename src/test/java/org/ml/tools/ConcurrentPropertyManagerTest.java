@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for ConcurrentPropertyManager which need access to package-private
+ * methods
+ *
+ * @author Dr. Matthias Laux
+ */
+public class ConcurrentPropertyManagerTest {
+
+    /**
+     *
+     * @param file
+     * @param a
+     * @throws Exception
+     */
+    private static void writeConfig(Path file, String a) throws Exception {
+        String xml = "<config><properties>"
+                + "<property name=\"a\">" + a + "</property>"
+                + "<property name=\"b\">x${a}</property>"
+                + "</properties></config>";
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void customMacroPattern() {
+        ConcurrentPropertyManager propertyManager = new ConcurrentPropertyManager();
+        propertyManager.setMacroPattern("\\$\\{(.+?)\\}");
+        assertEquals(Collections.singleton("a"), propertyManager.extractMacroReferences("x${a}"));
+        propertyManager.setProperty("a", "1");
+        propertyManager.setProperty("b", "x${a}");
+        assertEquals("x1", propertyManager.getProperty("b"));
+    }
+
+    @Test
+    public void bulkLoadIsPublishedAtomically() throws Exception {
+        ConcurrentPropertyManager propertyManager = new ConcurrentPropertyManager();
+        propertyManager.setProperty("a", "0");
+        propertyManager.setProperty("b", "0");
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger inconsistent = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                PropertyManager snapshot = propertyManager.freeze();
+                if (!snapshot.getProperty("a").equals(snapshot.getProperty("b"))) {
+                    inconsistent.incrementAndGet();
+                }
+                reads.incrementAndGet();
+            }
+        });
+        reader.start();
+        while (reads.get() == 0) {
+            Thread.yield();
+        }
+        for (int i = 1; i <= 1000; i++) {
+            propertyManager.beginBulk();
+            try {
+                propertyManager.setProperty("a", String.valueOf(i));
+                propertyManager.setProperty("b", String.valueOf(i));
+            } finally {
+                propertyManager.commitBulk();
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, inconsistent.get());
+        assertEquals("1000", propertyManager.getProperty("b"));
+    }
+
+    @Test
+    public void customMacroPatternReload() throws Exception {
+        Path file = Files.createTempFile("config", ".xml");
+        try {
+            writeConfig(file, "1");
+            ConcurrentPropertyManager propertyManager = new ConcurrentPropertyManager();
+            propertyManager.setMacroPattern("\\$\\{(.+?)\\}");
+            ReloadingPropertySource source = new ReloadingPropertySource(file, propertyManager);
+            assertEquals("x1", propertyManager.getProperty("b"));
+
+            //.... b itself did not change, but it refers to a
+            writeConfig(file, "2");
+            source.reload(Collections.singleton(file.toAbsolutePath().normalize()), false);
+            assertEquals("2", propertyManager.getProperty("a"));
+            assertEquals("x2", propertyManager.getProperty("b"));
+            source.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for ReloadingPropertySource; the reloads are triggered directly
+ * instead of through the file watcher
+ *
+ * @author Dr. Matthias Laux
+ */
+public class ReloadingPropertySourceTest {
+
+    /**
+     *
+     * @param file
+     * @param a
+     * @throws Exception
+     */
+    private static void writeConfig(Path file, String a) throws Exception {
+        String xml = "<config><properties>"
+                + "<property name=\"a\">" + a + "</property>"
+                + "<property name=\"b\">x##a##</property>"
+                + "</properties></config>";
+        Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void reloadWithAvoidOverwrites() throws Exception {
+        Path file = Files.createTempFile("config", ".xml");
+        try {
+            writeConfig(file, "1");
+            PropertyManager propertyManager = new PropertyManager();
+            propertyManager.setAvoidOverwrites(true);
+            ReloadingPropertySource source = new ReloadingPropertySource(file, propertyManager);
+            assertEquals("x1", propertyManager.getProperty("b"));
+
+            writeConfig(file, "2");
+            source.reload(Collections.singleton(file.toAbsolutePath().normalize()), false);
+            assertEquals("2", propertyManager.getProperty("a"));
+            assertEquals("x2", propertyManager.getProperty("b"));
+
+            //.... A later reload starts from the state actually applied
+            writeConfig(file, "3");
+            source.reload(Collections.singleton(file.toAbsolutePath().normalize()), false);
+            assertEquals("x3", propertyManager.getProperty("b"));
+            source.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml.tools.token.CompiledTokenTemplate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link CompiledTokenTemplate}, using the cases of
+ * {@link TokenReplacingReaderTest}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class CompiledTokenTemplateTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("template", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        CompiledTokenTemplate.clearCache();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void render() throws IOException {
+        for (String[] testCase : TokenReplacingReaderTest.CASES) {
+            CompiledTokenTemplate template = CompiledTokenTemplate.compile(testCase[0]);
+            assertEquals(testCase[0], testCase[1], template.render(TokenReplacingReaderTest.RESOLVER));
+
+            StringBuilder sb = new StringBuilder(">");
+            template.render(sb, TokenReplacingReaderTest.RESOLVER);
+            assertEquals(">" + testCase[1], sb.toString());
+
+            StringWriter writer = new StringWriter();
+            template.render(writer, TokenReplacingReaderTest.RESOLVER);
+            assertEquals(testCase[1], writer.toString());
+
+            ByteBuffer buffer = template.render(TokenReplacingReaderTest.RESOLVER, StandardCharsets.UTF_8);
+            assertEquals(testCase[1], StandardCharsets.UTF_8.decode(buffer).toString());
+
+            assertEquals(testCase[1], CompiledTokenTemplate.compile(new StringReader(testCase[0])).render(TokenReplacingReaderTest.RESOLVER));
+        }
+    }
+
+    @Test
+    public void segments() {
+        CompiledTokenTemplate template = CompiledTokenTemplate.compile("a${x}bc${y}${x");
+        assertEquals(2, template.getTokenCount());
+        assertEquals(6, template.getLiteralLength());
+    }
+
+    @Test
+    public void renderIntoBuffer() {
+        CompiledTokenTemplate template = CompiledTokenTemplate.compile("a${y}b");
+        ByteBuffer target = ByteBuffer.allocate(16);
+        assertEquals(7, template.render(target, TokenReplacingReaderTest.RESOLVER, StandardCharsets.UTF_8));
+        assertEquals(7, target.position());
+
+        //.... Nothing is written if the buffer is too small
+        ByteBuffer small = ByteBuffer.allocate(6);
+        try {
+            template.render(small, TokenReplacingReaderTest.RESOLVER, StandardCharsets.UTF_8);
+        } catch (BufferOverflowException ex) {
+            assertEquals(0, small.position());
+            return;
+        }
+        throw new AssertionError("BufferOverflowException expected");
+    }
+
+    @Test
+    public void cache() throws IOException {
+        Files.writeString(file, "a${x}");
+        CompiledTokenTemplate template = CompiledTokenTemplate.compile(file, StandardCharsets.UTF_8);
+        assertSame(template, CompiledTokenTemplate.compile(file, StandardCharsets.UTF_8));
+        assertNotSame(template, CompiledTokenTemplate.compile(file, StandardCharsets.ISO_8859_1));
+
+        //.... A new modification time invalidates the cached template
+        Files.writeString(file, "b${x}");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 10000));
+        assertEquals("b1", CompiledTokenTemplate.compile(file, StandardCharsets.UTF_8).render(TokenReplacingReaderTest.RESOLVER));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.util.Iterator;
+import org.junit.Test;
+import org.ml.tools.Namespace;
+import org.ml.tools.PropertyManager;
+import org.ml.tools.StringPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the read-only snapshots created with
+ * {@link PropertyManager#freeze()}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class FrozenPropertyManagerTest {
+
+    /**
+     *
+     * @return
+     */
+    private static PropertyManager createPropertyManager() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "1");
+        propertyManager.setProperty("b", "x##a##");
+        propertyManager.setProperty(Namespace.of("n"), "c", "2");
+        return propertyManager;
+    }
+
+    @Test
+    public void sameValues() {
+        PropertyManager propertyManager = createPropertyManager();
+        PropertyManager frozen = propertyManager.freeze();
+        assertTrue(propertyManager.diff(frozen).isEmpty());
+        assertEquals("x1", frozen.getProperty("b"));
+        assertEquals("2", frozen.getProperty(Namespace.of("n"), "c"));
+        assertNull(frozen.getProperty(Namespace.of("n"), "a"));
+        assertEquals(2, frozen.getInt(Namespace.of("n"), "c", 0));
+    }
+
+    @Test
+    public void independentOfSource() {
+        PropertyManager propertyManager = createPropertyManager();
+        PropertyManager frozen = propertyManager.freeze();
+        propertyManager.setProperty("a", "3");
+        assertEquals("1", frozen.getProperty("a"));
+        assertFalse(frozen.containsProperty("d"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readOnly() {
+        createPropertyManager().freeze().setProperty("a", "2");
+    }
+
+    @Test
+    public void keysAreInterned() {
+        boolean enabled = StringPool.isEnabled();
+        StringPool.setEnabled(false);
+        try {
+            PropertyManager first = new PropertyManager();
+            first.setProperty(new String("shared.key"), "1");
+            PropertyManager second = new PropertyManager();
+            second.setProperty(new String("shared.key"), "2");
+            Iterator<String> firstKeys = first.freeze().getProperties(PropertyManager.DEFAULT_NAMESPACE).keySet().iterator();
+            Iterator<String> secondKeys = second.freeze().getProperties(PropertyManager.DEFAULT_NAMESPACE).keySet().iterator();
+            assertSame(firstKeys.next(), secondKeys.next());
+        } finally {
+            StringPool.setEnabled(enabled);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import org.ml.tools.LayeredPropertyManager;
+import org.ml.tools.Namespace;
+import org.ml.tools.PropertyManager;
+import org.ml.tools.PropertySources;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression tests for the cached values and the serialization of a
+ * LayeredPropertyManager
+ *
+ * @author Dr. Matthias Laux
+ */
+public class LayeredPropertyManagerTest {
+
+    @Test
+    public void macroTargetInLowerLayer() {
+        Namespace n1 = Namespace.of("n1");
+        Namespace n2 = Namespace.of("n2");
+        PropertyManager top = new PropertyManager();
+        PropertyManager low = new PropertyManager();
+        top.setProperty(n2, "b", "fromN2");
+        LayeredPropertyManager layeredPropertyManager = new LayeredPropertyManager(PropertySources.of(top), PropertySources.of(low));
+        layeredPropertyManager.setProperty(n2, "r", "##b##");
+        assertEquals("fromN2", layeredPropertyManager.getProperty(n2, "r"));
+
+        //.... With ALL_NAMESPACES, the owner of b is now n1, which only the lowest layer knows about
+        low.setProperty(n1, "b", "fromN1");
+        assertEquals("fromN1", layeredPropertyManager.getProperty(n2, "r"));
+    }
+
+    @Test
+    public void sourcesAreNotSerialized() throws Exception {
+        PropertyManager low = new PropertyManager();
+        low.setProperty("a", "fromLow");
+        LayeredPropertyManager layeredPropertyManager = new LayeredPropertyManager(PropertySources.of(low));
+        layeredPropertyManager.setProperty("b", "x##a##");
+        assertEquals("xfromLow", layeredPropertyManager.getProperty("b"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(layeredPropertyManager);
+        }
+        LayeredPropertyManager copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LayeredPropertyManager) in.readObject();
+        }
+        assertTrue(copy.getSources().isEmpty());
+        assertNull(copy.getProperty("a"));
+        assertEquals("x##a##", copy.getProperty("b"));
+    }
+}
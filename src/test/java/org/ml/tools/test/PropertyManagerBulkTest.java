@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.util.Collections;
+import org.junit.Test;
+import org.ml.tools.PropertyManager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression tests for the resolution of macros in bulk loads
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertyManagerBulkTest {
+
+    @Test
+    public void copyOfSelfReference() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "##a##");
+        PropertyManager copy = new PropertyManager(propertyManager);
+        assertEquals("##a##", copy.getProperty("a"));
+        assertTrue(propertyManager.diff(copy).isEmpty());
+    }
+
+    @Test
+    public void copyOfCycle() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "x##b##");
+        propertyManager.setProperty("b", "y##a##");
+        propertyManager.setProperty("c", "z##a##");
+        PropertyManager copy = new PropertyManager(propertyManager);
+        assertTrue(propertyManager.diff(copy).isEmpty());
+    }
+
+    @Test
+    public void mergeOfCycle() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "x##b##");
+        propertyManager.setProperty("b", "y##a##");
+        PropertyManager target = new PropertyManager();
+        target.merge(target.diff(propertyManager));
+        assertTrue(propertyManager.diff(target).isEmpty());
+    }
+
+    @Test
+    public void cycleLeavesOtherPropertiesResolved() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.beginBulk();
+        propertyManager.setProperty("a", "##b##");
+        propertyManager.setProperty("b", "##a##");
+        propertyManager.setProperty("c", "##d##");
+        propertyManager.setProperty("d", "1");
+        propertyManager.commitBulk();
+        assertEquals("##b##", propertyManager.getProperty("a"));
+        assertEquals("##a##", propertyManager.getProperty("b"));
+        assertEquals("1", propertyManager.getProperty("c"));
+    }
+
+    @Test
+    public void selfExtensionWithoutPreviousValue() {
+        PropertyManager propertyManager = new PropertyManager(Collections.singletonMap("a", "##a##/x"));
+        assertEquals("##a##/x", propertyManager.getProperty("a"));
+    }
+
+    @Test
+    public void selfExtensionOfPreviousValue() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "base");
+        propertyManager.setProperties(Collections.singletonMap("a", "##a##/x"));
+        assertEquals("base/x", propertyManager.getProperty("a"));
+    }
+
+    @Test
+    public void duplicateKeysInBulk() {
+
+        //.... Within a bulk load, macros see the last value of a key
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.beginBulk();
+        propertyManager.setProperty("r", "##b##");
+        propertyManager.setProperty("b", "v6");
+        propertyManager.setProperty("b", "v3");
+        propertyManager.commitBulk();
+        assertEquals("v3", propertyManager.getProperty("r"));
+    }
+
+    @Test
+    public void duplicateKeysSequential() {
+
+        //.... Outside of a bulk load, a macro is resolved as soon as its key is available
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("r", "##b##");
+        propertyManager.setProperty("b", "v6");
+        propertyManager.setProperty("b", "v3");
+        assertEquals("v6", propertyManager.getProperty("r"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml.tools.Namespace;
+import org.ml.tools.PropertyManager;
+import org.ml.tools.PropertySnapshot;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the binary snapshots written by {@link PropertySnapshot}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertySnapshotTest {
+
+    private Path directory;
+    private Path sourceFile;
+    private Path snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        sourceFile = directory.resolve("source.txt");
+        snapshotFile = directory.resolve("source.snapshot");
+        Files.writeString(sourceFile, "1");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static PropertyManager createPropertyManager(Path file) throws IOException {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setAvoidOverwrites(true);
+        propertyManager.setProperty("a", Files.readString(file));
+        propertyManager.setProperty("b", "x##a##");
+        propertyManager.setProperty(Namespace.of("n", "m"), "c", "\u00e4\u20ac");
+        return propertyManager;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        PropertyManager propertyManager = createPropertyManager(sourceFile);
+        PropertySnapshot.write(propertyManager, snapshotFile);
+        PropertyManager copy = PropertySnapshot.read(snapshotFile);
+        assertTrue(propertyManager.diff(copy).isEmpty());
+        assertEquals("x1", copy.getProperty("b"));
+        assertEquals("\u00e4\u20ac", copy.getProperty(Namespace.of("n", "m"), "c"));
+        assertTrue(copy.doesAvoidOverwrites());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptSnapshot() throws IOException {
+        PropertySnapshot.write(createPropertyManager(sourceFile), snapshotFile);
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshotFile, bytes);
+        PropertySnapshot.read(snapshotFile);
+    }
+
+    @Test
+    public void loadOrBuild() throws IOException {
+        AtomicInteger builds = new AtomicInteger();
+        PropertySnapshot.Builder<IOException> builder = file -> {
+            builds.incrementAndGet();
+            return createPropertyManager(file);
+        };
+        assertEquals("1", PropertySnapshot.loadOrBuild(sourceFile, snapshotFile, builder).getProperty("a"));
+        assertEquals("1", PropertySnapshot.loadOrBuild(sourceFile, snapshotFile, builder).getProperty("a"));
+        assertEquals(1, builds.get());
+
+        //.... Touching the file without changing it keeps the snapshot
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() + 10000));
+        assertTrue(PropertySnapshot.isUpToDate(snapshotFile, sourceFile));
+        assertEquals("1", PropertySnapshot.loadOrBuild(sourceFile, snapshotFile, builder).getProperty("a"));
+        assertEquals(1, builds.get());
+
+        //.... A modification leads to a rebuild
+        Files.writeString(sourceFile, "2");
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() + 20000));
+        assertFalse(PropertySnapshot.isUpToDate(snapshotFile, sourceFile));
+        assertEquals("2", PropertySnapshot.loadOrBuild(sourceFile, snapshotFile, builder).getProperty("a"));
+        assertEquals(2, builds.get());
+    }
+}
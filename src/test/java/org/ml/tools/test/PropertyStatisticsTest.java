@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.ml.tools.PropertyManager;
+import org.ml.tools.PropertyStatistics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the access statistics created with
+ * {@link PropertyManager#enableStatistics()}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class PropertyStatisticsTest {
+
+    @Test
+    public void counters() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "1");
+        propertyManager.setProperty("b", "x");
+        PropertyStatistics statistics = propertyManager.enableStatistics();
+        propertyManager.getProperty("a");
+        propertyManager.getProperty("c");
+        propertyManager.getInt("b", 5);
+        assertEquals(3, statistics.getReads());
+        assertEquals(1, statistics.getMisses());
+        assertEquals(1, statistics.getParseFailures());
+        assertEquals(1, statistics.getDefaults());
+        assertEquals("a=1", statistics.topKeys(1)[0]);
+    }
+
+    @Test
+    public void missingKeysAreBounded() {
+        PropertyManager propertyManager = new PropertyManager();
+        propertyManager.setProperty("a", "1");
+        PropertyStatistics statistics = propertyManager.enableStatistics();
+        statistics.setMaxMissingKeys(10);
+        for (int i = 0; i < 10000; i++) {
+            propertyManager.getProperty("missing" + i);
+            propertyManager.getInt("other" + i, 0);
+        }
+        propertyManager.getProperty("a");
+        assertEquals(11, statistics.getTrackedKeyCount());
+        assertEquals(20001, statistics.getReads());
+        assertEquals(20000, statistics.getMisses());
+        assertEquals(10000, statistics.getDefaults());
+        assertEquals("a=1", statistics.topKeys(1)[0]);
+
+        statistics.reset();
+        assertEquals(0, statistics.getTrackedKeyCount());
+        assertEquals(0, statistics.getMisses());
+    }
+
+    @Test
+    public void enableConcurrently() throws Exception {
+        PropertyManager propertyManager = new PropertyManager();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<PropertyStatistics>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                tasks.add(propertyManager::enableStatistics);
+            }
+            for (Future<PropertyStatistics> future : executor.invokeAll(tasks)) {
+                assertSame(propertyManager.getStatistics(), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ml.tools.token.TokenReplacingChannels;
+import org.ml.tools.token.TokenReplacingInputStream;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the byte-level token replacement of
+ * {@link TokenReplacingInputStream} and {@link TokenReplacingChannels}, using
+ * the cases of {@link TokenReplacingReaderTest}
+ *
+ * @author Dr. Matthias Laux
+ */
+public class TokenReplacingBytesTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("tokens", ".txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     *
+     * @param source
+     * @param bufferSize
+     * @return
+     * @throws IOException
+     */
+    private static String replace(String source, int bufferSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8));
+        try (TokenReplacingInputStream stream = new TokenReplacingInputStream(in, TokenReplacingReaderTest.RESOLVER, StandardCharsets.UTF_8, bufferSize)) {
+            byte[] b = new byte[5];
+            int n;
+            while ((n = stream.read(b, 0, b.length)) >= 0) {
+                bytes.write(b, 0, n);
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     *
+     * @param source
+     * @param offset The number of characters skipped at the start
+     * @param blockSize
+     * @return
+     * @throws IOException
+     */
+    private String transfer(String source, int offset, int blockSize) throws IOException {
+        Files.writeString(file, source);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file); WritableByteChannel target = Channels.newChannel(bytes)) {
+            channel.position(source.substring(0, offset).getBytes(StandardCharsets.UTF_8).length);
+            long n = TokenReplacingChannels.transfer(channel, target, TokenReplacingReaderTest.RESOLVER, StandardCharsets.UTF_8, blockSize);
+            assertEquals(bytes.size(), n);
+            assertEquals(channel.size(), channel.position());
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void inputStream() throws IOException {
+        for (String[] testCase : TokenReplacingReaderTest.CASES) {
+            for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+                assertEquals(testCase[0] + " / " + bufferSize, testCase[1], replace(testCase[0], bufferSize));
+            }
+            assertEquals(testCase[1], replace(testCase[0], TokenReplacingInputStream.DEFAULT_BUFFER_SIZE));
+        }
+    }
+
+    @Test
+    public void channels() throws IOException {
+        for (String[] testCase : TokenReplacingReaderTest.CASES) {
+            for (int blockSize = 1; blockSize <= 16; blockSize++) {
+                assertEquals(testCase[0] + " / " + blockSize, testCase[1], transfer(testCase[0], 0, blockSize));
+            }
+            assertEquals(testCase[1], transfer(testCase[0], 0, TokenReplacingChannels.DEFAULT_BLOCK_SIZE));
+        }
+    }
+
+    @Test
+    public void channelsFromPosition() throws IOException {
+        String source = "skipped ${x} ${x}${y}";
+        for (int blockSize = 1; blockSize <= 16; blockSize++) {
+            assertEquals(" 1 1\u00e4\u20ac", transfer(source, 7, blockSize));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedCharset() {
+        new TokenReplacingInputStream(InputStream.nullInputStream(), TokenReplacingReaderTest.RESOLVER, Charset.forName("UTF-16"));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Dr. Matthias Laux.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ml.tools.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import org.junit.Test;
+import org.ml.tools.token.ITokenResolver;
+import org.ml.tools.token.TokenReplacingReader;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TokenReplacingReader}, in particular for tokens spanning
+ * the blocks read from the source
+ *
+ * @author Dr. Matthias Laux
+ */
+public class TokenReplacingReaderTest {
+
+    static final ITokenResolver RESOLVER = Map.of("x", "1", "y", "\u00e4\u20ac", "z", "${x}")::get;
+    static final String[][] CASES = {
+        {"", ""},
+        {"plain text", "plain text"},
+        {"a${x}b${y}c", "a1b\u00e4\u20acc"},
+        {"${x}${x}", "11"},
+        {"${unknown} and ${}", "${unknown} and ${}"},
+        {"$${x}$", "$1$"},
+        {"${z}", "${x}"},
+        {"\u00fc${x}\u00fc", "\u00fc1\u00fc"},
+        {"cost: $5, ${x", "cost: $5, ${x"}
+    };
+
+    /**
+     *
+     * @param source
+     * @param bufferSize
+     * @param bulk
+     * @return
+     * @throws IOException
+     */
+    private static String replace(String source, int bufferSize, boolean bulk) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (TokenReplacingReader reader = new TokenReplacingReader(new StringReader(source), RESOLVER, bufferSize)) {
+            if (bulk) {
+                char[] chars = new char[3];
+                int n;
+                while ((n = reader.read(chars, 0, chars.length)) >= 0) {
+                    sb.append(chars, 0, n);
+                }
+            } else {
+                int c;
+                while ((c = reader.read()) >= 0) {
+                    sb.append((char) c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void bulkReads() throws IOException {
+        for (String[] testCase : CASES) {
+            for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+                assertEquals(testCase[0] + " / " + bufferSize, testCase[1], replace(testCase[0], bufferSize, true));
+            }
+            assertEquals(testCase[1], replace(testCase[0], TokenReplacingReader.DEFAULT_BUFFER_SIZE, true));
+        }
+    }
+
+    @Test
+    public void singleReads() throws IOException {
+        for (String[] testCase : CASES) {
+            for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+                assertEquals(testCase[0] + " / " + bufferSize, testCase[1], replace(testCase[0], bufferSize, false));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBufferSize() {
+        new TokenReplacingReader(new StringReader(""), RESOLVER, 0);
+    }
+}